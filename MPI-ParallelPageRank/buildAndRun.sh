@@ -1,10 +1,11 @@
-if [ $# != 5 ] ; then
-	echo "USAGE: $0 <numberOfCore> <input> <output> <damping factor> <maxIterations>"
+if [ $# -lt 5 ] ; then
+	echo "USAGE: $0 <numberOfCore> <input> <output> <damping factor> <maxIterations> [options]"
         echo " e.g.: $0  2 ../pagerank.input ../output.txt 0.85 10"
         exit 1;
 fi
 
 
-javac -cp .:./lib/mpj.jar src/MPIPageRank/MPIPageRank.java -d bin/
+# the graph loading classes are shared with ../SequentialPageRank (package PageRank)
+javac -cp .:./lib/mpj.jar -sourcepath src:../SequentialPageRank/src src/MPIPageRank/*.java -d bin/
 cd bin
-mpjrun.sh -np $1 MPIPageRank.MPIPageRank $2 $3 $4 $5
+mpjrun.sh -np $1 MPIPageRank.MPIPageRank $2 $3 $4 $5 "${@:6}"
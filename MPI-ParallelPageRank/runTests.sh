@@ -0,0 +1,30 @@
+# JUnit tests of src/MPIPageRank (see test/MPIPageRank). Needs MPJ_HOME, like mpjrun.sh: the tests
+# start their rank programs with $MPJ_HOME/lib/starter.jar on the multicore device. Arguments are
+# test class names, e.g. "$0 MPIPageRank.SparseExchangeTest"; without arguments every *Test class
+# under test/ runs.
+
+JUNIT_VERSION=4.13.2
+MAVEN=https://repo1.maven.org/maven2
+JARS="junit/junit/$JUNIT_VERSION/junit-$JUNIT_VERSION.jar
+org/hamcrest/hamcrest-core/1.3/hamcrest-core-1.3.jar"
+
+cd "$(dirname "$0")"
+if [ -z "$MPJ_HOME" ]; then
+	echo "MPJ_HOME is not set"
+	exit 1
+fi
+mkdir -p test-lib
+for jar in $JARS; do
+	if [ ! -f test-lib/$(basename $jar) ]; then
+		echo "Downloading $(basename $jar)"
+		curl -sSf -o test-lib/$(basename $jar) $MAVEN/$jar || exit 1
+	fi
+done
+
+# the graph loading classes are shared with ../SequentialPageRank (package PageRank)
+rm -rf test-bin
+javac -cp "lib/mpj.jar:test-lib/*" -sourcepath src:../SequentialPageRank/src -d test-bin src/MPIPageRank/*.java test/MPIPageRank/*.java || exit 1
+if [ $# -eq 0 ]; then
+	set -- $(cd test && ls MPIPageRank/*Test.java | sed 's|/|.|; s|\.java$||')
+fi
+java -cp "test-bin:lib/mpj.jar:test-lib/*" org.junit.runner.JUnitCore "$@"
@@ -0,0 +1,38 @@
+package MPIPageRank;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Heap allocation and garbage collection counters for the per-iteration log.
+ *
+ * Allocated bytes are counted for the calling thread only (in the MPJ multicore device every rank is a
+ * thread of the same JVM). They include whatever the MPJ library allocates inside the collectives.
+ * The collection count is for the whole JVM.
+ */
+public class AllocationCounter {
+
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	/**
+	 * @return bytes allocated so far by the current thread, or -1 if the JVM can not tell
+	 */
+	public static long threadAllocatedBytes() {
+		if(threads instanceof com.sun.management.ThreadMXBean){
+			return ((com.sun.management.ThreadMXBean)threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	/**
+	 * @return garbage collections run so far by all collectors
+	 */
+	public static long gcCount() {
+		long count = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()){
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+}
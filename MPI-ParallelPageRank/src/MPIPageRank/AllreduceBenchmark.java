@@ -0,0 +1,86 @@
+package MPIPageRank;
+
+import java.util.Locale;
+
+import mpi.MPI;
+
+/**
+ * Times the VectorAllreduce algorithms against each other for a list of vector sizes.
+ *
+ * Usage : mpjrun.sh [-dev niodev] -np [no. of processes] MPIPageRank.AllreduceBenchmark [sizes] [repetitions] [precision]
+ *
+ *   sizes       - comma separated vector lengths in doubles (default 1000,100000,1000000,4000000)
+ *   repetitions - timed sums per size and algorithm (default 10)
+ *   precision   - double or float, the type on the wire (default double)
+ *
+ * Every rank fills its vector with values that depend on the rank, so the result can be checked.
+ * Rank 0 prints one line per size and algorithm: the slowest rank's ms per sum, the bandwidth
+ * as vector bytes / time and the largest error against the expected sum.
+ */
+public class AllreduceBenchmark {
+
+	public static void main(String[] args) {
+		MPI.Init(args);
+		int rank = MPI.COMM_WORLD.Rank();
+		int nRanks = MPI.COMM_WORLD.Size();
+
+		// args[0..2] are used by MPJ
+		String sizes = (args.length > 3) ? args[3] : "1000,100000,1000000,4000000";
+		int repetitions = (args.length > 4) ? Integer.parseInt(args[4]) : 10;
+		boolean floats = (args.length > 5) && args[5].equals("float");
+
+		if(rank == 0){
+			System.out.println("ranks " + nRanks + ", repetitions " + repetitions + ", precision " + (floats ? "float" : "double"));
+			System.out.println("size,algorithm,ms,MB/s,max error");
+		}
+		double[] time = new double[1];
+		double[] error = new double[1];
+		for(String s : sizes.split(",")){
+			int count = Integer.parseInt(s.trim());
+			double[] values = new double[count];
+			for(int a = 0; a < VectorAllreduce.ALGORITHMS.length; a++){
+				VectorAllreduce allreduce = new VectorAllreduce(VectorAllreduce.ALGORITHMS[a], count, floats);
+
+				// warm up the JIT and the connections
+				for(int i = 0; i < 2; i++){
+					fill(values, rank);
+					allreduce.sum(values);
+				}
+
+				long nanos = 0;
+				for(int i = 0; i < repetitions; i++){
+					fill(values, rank);
+					MPI.COMM_WORLD.Barrier();
+					long start = System.nanoTime();
+					allreduce.sum(values);
+					nanos += System.nanoTime() - start;
+				}
+
+				// sum over ranks r of (i % 7 + r) is nRanks * (i % 7) + nRanks*(nRanks-1)/2,
+				// small integers that float32 holds exactly as well
+				double maxError = 0;
+				for(int i = 0; i < count; i++){
+					double expected = nRanks * (double)(i % 7) + nRanks * (nRanks - 1) / 2.0;
+					maxError = Math.max(maxError, Math.abs(values[i] - expected));
+				}
+
+				time[0] = nanos / 1e6 / repetitions;
+				error[0] = maxError;
+				MPI.COMM_WORLD.Allreduce(time, 0, time, 0, 1, MPI.DOUBLE, MPI.MAX);
+				MPI.COMM_WORLD.Allreduce(error, 0, error, 0, 1, MPI.DOUBLE, MPI.MAX);
+				if(rank == 0){
+					double megabytes = count * 8.0 / (1 << 20);
+					System.out.println(count + "," + allreduce.algorithm() + "," + String.format(Locale.ROOT, "%.3f", time[0])
+							+ "," + String.format(Locale.ROOT, "%.1f", megabytes / (time[0] / 1000)) + "," + error[0]);
+				}
+			}
+		}
+		MPI.Finalize();
+	}
+
+	private static void fill(double[] values, int rank) {
+		for(int i = 0; i < values.length; i++){
+			values[i] = i % 7 + rank;
+		}
+	}
+}
@@ -0,0 +1,280 @@
+package MPIPageRank;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import PageRank.CSRGraph;
+import PageRank.GaussSeidelSolver;
+import mpi.MPI;
+
+/**
+ * Block-asynchronous version of PageRank.GaussSeidelSolver: every rank sweeps the urls it owns (its
+ * local rows) in place, Gauss-Seidel style, and reads the ranks of remote urls from the last
+ * synchronization. The ranks are only exchanged every few sweeps (-sync), so a rank runs several
+ * sweeps on its block per exchange.
+ *
+ * To update an owned url a rank needs its in-links, which come from the rows of all ranks, so the
+ * constructor sends every local link (u, v) to the owner of v once (Alltoall of counts, Alltoallv of
+ * sources and targets). A synchronization is one Allgatherv of the owned ranks into the full vector on
+ * every rank and one scalar Allreduce of the residual. After it the ranks are scaled to sum to 1, for
+ * the reason given in GaussSeidelSolver; all ranks hold the same vector, so they scale it identically.
+ *
+ * With -sync 1 it is Gauss-Seidel within a rank and Jacobi between ranks.
+ */
+public class BlockAsyncGaussSeidel {
+
+	private final int nRanks;
+	private final int size;
+	private final double df;
+	private final int[] localSources;
+
+	// urls of all ranks in rank order, and how many each rank owns, for the Allgatherv
+	private final int[] allSources;
+	private final int[] counts;
+	private final int[] displs;
+
+	// in-links of the owned urls: for local row r, the urls linking to localSources[r] are
+	// inSources[inOffsets[r]] ... inSources[inOffsets[r+1]-1]
+	private final int[] inOffsets;
+	private final int[] inSources;
+	// local rows in the order they are swept
+	private final int[] order;
+
+	// indexed by url: 1/outDegree (0 for dangling urls), rank and rank/outDegree
+	private final double[] invOutDegree;
+	private final double[] ranks;
+	private final double[] contributions;
+	// rank held by dangling urls, as this rank sees it
+	private double danglingValue;
+
+	private final double[] ownedRanks;
+	private final double[] allRanks;
+	private final double[] scalarBuffer = new double[1];
+	private int synchronizations = 0;
+	// payload bytes this rank has sent and received in synchronizations
+	private long bytesSent = 0;
+	private long bytesReceived = 0;
+
+	/**
+	 * Collective: must be called by all ranks.
+	 *
+	 * @param size number of urls
+	 * @param df damping factor
+	 * @param localSources source url of every local row
+	 * @param localAdjMatrix local rows of the adjacency matrix
+	 * @param order one of GaussSeidelSolver.ORDERS, applied to the local rows
+	 */
+	public BlockAsyncGaussSeidel(int size, double df, int[] localSources, CSRGraph localAdjMatrix, String order) {
+		this.nRanks = MPI.COMM_WORLD.Size();
+		this.size = size;
+		this.df = df;
+		this.localSources = localSources;
+		int localRows = localSources.length;
+
+		counts = new int[nRanks];
+		int[] localCount = new int[]{localRows};
+		MPI.COMM_WORLD.Allgather(localCount, 0, 1, MPI.INT, counts, 0, 1, MPI.INT);
+		displs = SparseExchange.displacements(counts);
+		allSources = new int[displs[nRanks-1] + counts[nRanks-1]];
+		MPI.COMM_WORLD.Allgatherv(localSources, 0, localRows, MPI.INT, allSources, 0, counts, displs, MPI.INT);
+
+		// out-degree of every url, gathered in the same layout
+		int[] localDegrees = new int[localRows];
+		for(int row = 0; row < localRows; row++){
+			localDegrees[row] = localAdjMatrix.outDegree(row);
+		}
+		int[] allDegrees = new int[allSources.length];
+		MPI.COMM_WORLD.Allgatherv(localDegrees, 0, localRows, MPI.INT, allDegrees, 0, counts, displs, MPI.INT);
+		int[] owner = new int[size];
+		invOutDegree = new double[size];
+		for(int r = 0; r < nRanks; r++){
+			for(int k = displs[r]; k < displs[r] + counts[r]; k++){
+				owner[allSources[k]] = r;
+				if(allDegrees[k] != 0){
+					invOutDegree[allSources[k]] = 1.0 / allDegrees[k];
+				}
+			}
+		}
+
+		// send every local link (u, v) to the owner of v
+		int[] offsets = localAdjMatrix.offsets;
+		int[] targets = localAdjMatrix.targets;
+		int[] sendCounts = new int[nRanks];
+		for(int e = 0; e < targets.length; e++){
+			sendCounts[owner[targets[e]]]++;
+		}
+		int[] sendDispls = SparseExchange.displacements(sendCounts);
+		int[] fill = Arrays.copyOf(sendDispls, nRanks);
+		int[] sendSources = new int[targets.length];
+		int[] sendTargets = new int[targets.length];
+		for(int row = 0; row < localRows; row++){
+			for(int e = offsets[row]; e < offsets[row+1]; e++){
+				int slot = fill[owner[targets[e]]]++;
+				sendSources[slot] = localSources[row];
+				sendTargets[slot] = targets[e];
+			}
+		}
+		int[] recvCounts = new int[nRanks];
+		MPI.COMM_WORLD.Alltoall(sendCounts, 0, 1, MPI.INT, recvCounts, 0, 1, MPI.INT);
+		int[] recvDispls = SparseExchange.displacements(recvCounts);
+		int received = recvDispls[nRanks-1] + recvCounts[nRanks-1];
+		int[] recvSources = new int[received];
+		int[] recvTargets = new int[received];
+		MPI.COMM_WORLD.Alltoallv(sendSources, 0, sendCounts, sendDispls, MPI.INT,
+				recvSources, 0, recvCounts, recvDispls, MPI.INT);
+		MPI.COMM_WORLD.Alltoallv(sendTargets, 0, sendCounts, sendDispls, MPI.INT,
+				recvTargets, 0, recvCounts, recvDispls, MPI.INT);
+
+		// group the received links by local row of the target
+		int[] rowOf = new int[size];
+		for(int row = 0; row < localRows; row++){
+			rowOf[localSources[row]] = row;
+		}
+		inOffsets = new int[localRows + 1];
+		for(int k = 0; k < received; k++){
+			inOffsets[rowOf[recvTargets[k]] + 1]++;
+		}
+		for(int row = 0; row < localRows; row++){
+			inOffsets[row+1] += inOffsets[row];
+		}
+		inSources = new int[received];
+		fill = Arrays.copyOf(inOffsets, localRows);
+		for(int k = 0; k < received; k++){
+			inSources[fill[rowOf[recvTargets[k]]]++] = recvSources[k];
+		}
+
+		this.order = rowOrder(localAdjMatrix, order);
+		ranks = new double[size];
+		contributions = new double[size];
+		ownedRanks = new double[localRows];
+		allRanks = new double[allSources.length];
+		Arrays.fill(ranks, 1.0 / size);
+		refresh(1.0);
+	}
+
+	/**
+	 * One in-place sweep over the owned urls, with the remote ranks of the last synchronization.
+	 *
+	 * @return L1 norm of the change of the owned ranks
+	 */
+	public double sweep() {
+		double teleport = (1-df) / size;
+		double change = 0;
+		for(int k = 0; k < order.length; k++){
+			int row = order[k];
+			int v = localSources[row];
+			double sum = 0;
+			for(int i = inOffsets[row]; i < inOffsets[row+1]; i++){
+				sum += contributions[inSources[i]];
+			}
+			double newRank = teleport + df*(sum + danglingValue / size);
+			double difference = newRank - ranks[v];
+			if(invOutDegree[v] == 0){
+				danglingValue += difference;
+			}
+			change += Math.abs(difference);
+			ranks[v] = newRank;
+			contributions[v] = newRank * invOutDegree[v];
+		}
+		return change;
+	}
+
+	/**
+	 * Exchange the owned ranks so every rank has the full vector again, and scale it to sum to 1.
+	 * Collective: must be called by all ranks.
+	 *
+	 * @param change L1 change of this rank's ranks since the last synchronization
+	 * @return change summed over all ranks
+	 */
+	public double synchronize(double change) {
+		for(int row = 0; row < localSources.length; row++){
+			ownedRanks[row] = ranks[localSources[row]];
+		}
+		MPI.COMM_WORLD.Allgatherv(ownedRanks, 0, ownedRanks.length, MPI.DOUBLE, allRanks, 0, counts, displs, MPI.DOUBLE);
+		double total = 0;
+		for(int k = 0; k < allSources.length; k++){
+			ranks[allSources[k]] = allRanks[k];
+			total += allRanks[k];
+		}
+		refresh(1 / total);
+		bytesSent += 8L * ownedRanks.length;
+		bytesReceived += 8L * (allRanks.length - ownedRanks.length);
+		synchronizations++;
+
+		scalarBuffer[0] = change;
+		MPI.COMM_WORLD.Allreduce(scalarBuffer, 0, scalarBuffer, 0, 1, MPI.DOUBLE, MPI.SUM);
+		return scalarBuffer[0];
+	}
+
+	/**
+	 * @return rank of every url, as of the last synchronization (call it after the last sweep)
+	 */
+	public double[] ranks() {
+		return ranks;
+	}
+
+	public int synchronizations() {
+		return synchronizations;
+	}
+
+	/**
+	 * @return payload bytes this rank has sent in synchronizations
+	 */
+	public long bytesSent() {
+		return bytesSent;
+	}
+
+	/**
+	 * @return payload bytes this rank has received in synchronizations
+	 */
+	public long bytesReceived() {
+		return bytesReceived;
+	}
+
+	// scale the ranks and recompute contributions and dangling rank from them
+	private void refresh(double scale) {
+		danglingValue = 0;
+		for(int u = 0; u < size; u++){
+			ranks[u] *= scale;
+			contributions[u] = ranks[u] * invOutDegree[u];
+			if(invOutDegree[u] == 0){
+				danglingValue += ranks[u];
+			}
+		}
+	}
+
+	/**
+	 * @return the local rows sorted for a sweep in the given GaussSeidelSolver order; ties keep row order
+	 */
+	private int[] rowOrder(final CSRGraph localAdjMatrix, String order) {
+		int localRows = localSources.length;
+		Integer[] rows = new Integer[localRows];
+		for(int row = 0; row < localRows; row++){
+			rows[row] = row;
+		}
+		if(order.equals("indegree")){
+			Arrays.sort(rows, new Comparator<Integer>()
+			{
+				public int compare(Integer r1, Integer r2)
+				{
+					return (inOffsets[r2+1] - inOffsets[r2]) - (inOffsets[r1+1] - inOffsets[r1]);
+				}
+			});
+		}else if(order.equals("outdegree")){
+			Arrays.sort(rows, new Comparator<Integer>()
+			{
+				public int compare(Integer r1, Integer r2)
+				{
+					return localAdjMatrix.outDegree(r2) - localAdjMatrix.outDegree(r1);
+				}
+			});
+		}else if(!GaussSeidelSolver.isOrder(order)){
+			throw new IllegalArgumentException("Unknown order: " + order);
+		}
+		int[] sorted = new int[localRows];
+		for(int i = 0; i < localRows; i++){
+			sorted[i] = rows[i];
+		}
+		return sorted;
+	}
+}
@@ -0,0 +1,287 @@
+package MPIPageRank;
+
+import java.util.Arrays;
+
+import PageRank.CSRGraph;
+import mpi.MPI;
+
+/**
+ * MPI version of PageRank.DeltaPageRank: every rank pushes the residuals of the urls it owns (its local
+ * rows), and only residual that was actually pushed travels between ranks.
+ *
+ * Per round a rank processes its frontier. Shares for urls it owns go straight into its residuals;
+ * shares for remote urls are summed per target and sent to the owner as (url, value) pairs with one
+ * Alltoall of counts and one Alltoallv each of urls and values. The owner adds them to its residuals
+ * and queues the urls that crossed the threshold. A scalar Allreduce combines the frontier sizes and the
+ * remaining residual, so all ranks stop in the same round.
+ *
+ * As in DeltaPageRank the residual of dangling urls is dropped and the ranks are scaled to sum to 1
+ * at the end.
+ */
+public class DistributedDeltaPageRank {
+
+	private static final int PAIR_BYTES = 4 + 8;
+
+	private final int rank;
+	private final int nRanks;
+	private final int size;
+	private final double df;
+	private final double threshold;
+	private final int[] localSources;
+	private final CSRGraph localAdjMatrix;
+
+	// owner rank and local row of every url (the row is only valid for owned urls)
+	private final int[] owner;
+	private final int[] rowOf;
+
+	// indexed by url, only owned urls are used
+	private final double[] ranks;
+	private final double[] residuals;
+	private final boolean[] queued;
+	private int[] frontier;
+	private int[] next;
+	private int frontierSize;
+
+	// shares for remote urls summed per target, and the targets touched this round; a share can be 0
+	// (-df 1, or residuals that underflow), so membership is kept in inTouched, not in the value
+	private final double[] remoteResiduals;
+	private final boolean[] inTouched;
+	private final int[] touched;
+	private int touchedCount;
+
+	private final int[] sendCounts;
+	private final int[] sendDispls;
+	private final int[] recvCounts;
+	private int[] sendTargets;
+	private double[] sendValues;
+	private int[] recvTargets;
+	private double[] recvValues;
+
+	// global number of urls processed in the last round and in the next one, and residual left
+	private long globalProcessed;
+	private long globalActive;
+	private double globalResidual;
+	private double localResidual;
+	private final double[] reduceBuffer = new double[3];
+
+	// payload bytes this rank has sent, summed over all rounds
+	private long bytesSent = 0;
+	// payload bytes this rank has received, summed over all rounds
+	private long bytesReceived = 0;
+
+	/**
+	 * Collective: must be called by all ranks.
+	 *
+	 * @param size number of urls
+	 * @param df damping factor
+	 * @param threshold an owned url is processed once its residual is above this value
+	 * @param localSources source url of every local row
+	 * @param localAdjMatrix local rows of the adjacency matrix
+	 */
+	public DistributedDeltaPageRank(int size, double df, double threshold, int[] localSources, CSRGraph localAdjMatrix) {
+		this.rank = MPI.COMM_WORLD.Rank();
+		this.nRanks = MPI.COMM_WORLD.Size();
+		this.size = size;
+		this.df = df;
+		this.threshold = threshold;
+		this.localSources = localSources;
+		this.localAdjMatrix = localAdjMatrix;
+
+		owner = SparseExchange.gatherOwners(size, localSources, nRanks);
+		rowOf = new int[size];
+		for(int row = 0; row < localSources.length; row++){
+			rowOf[localSources[row]] = row;
+		}
+
+		ranks = new double[size];
+		residuals = new double[size];
+		queued = new boolean[size];
+		frontier = new int[localSources.length];
+		next = new int[localSources.length];
+		remoteResiduals = new double[size];
+		inTouched = new boolean[size];
+
+		// at most one pair per distinct remote target of the local rows
+		int[] targets = localAdjMatrix.targets;
+		int distinctRemote = 0;
+		for(int e = 0; e < targets.length; e++){
+			int target = targets[e];
+			if(owner[target] != rank && !inTouched[target]){
+				inTouched[target] = true;
+				distinctRemote++;
+			}
+		}
+		Arrays.fill(inTouched, false);
+		touched = new int[distinctRemote];
+		sendTargets = new int[distinctRemote];
+		sendValues = new double[distinctRemote];
+		recvTargets = new int[0];
+		recvValues = new double[0];
+		sendCounts = new int[nRanks];
+		sendDispls = new int[nRanks];
+		recvCounts = new int[nRanks];
+
+		// the first round processes every owned url, whatever the threshold
+		for(int row = 0; row < localSources.length; row++){
+			int url = localSources[row];
+			residuals[url] = (1-df) / size;
+			frontier[row] = url;
+			queued[url] = true;
+		}
+		frontierSize = localSources.length;
+		localResidual = (1-df) * localSources.length / size;
+		globalActive = size;
+		globalResidual = 1 - df;
+	}
+
+	/**
+	 * @return number of urls all ranks will process in the next round, 0 once converged
+	 */
+	public long activeCount() {
+		return globalActive;
+	}
+
+	/**
+	 * @return number of urls all ranks processed in the last round
+	 */
+	public long processedCount() {
+		return globalProcessed;
+	}
+
+	/**
+	 * @return residual not propagated yet, summed over all ranks
+	 */
+	public double remainingResidual() {
+		return globalResidual;
+	}
+
+	/**
+	 * @return payload bytes this rank has sent so far
+	 */
+	public long bytesSent() {
+		return bytesSent;
+	}
+
+	/**
+	 * @return payload bytes this rank has received so far
+	 */
+	public long bytesReceived() {
+		return bytesReceived;
+	}
+
+	/**
+	 * One round. Collective: must be called by all ranks.
+	 */
+	public void round() {
+		int[] offsets = localAdjMatrix.offsets;
+		int[] targets = localAdjMatrix.targets;
+		int processed = frontierSize;
+		int nextSize = 0;
+		touchedCount = 0;
+
+		for(int k = 0; k < processed; k++){
+			int u = frontier[k];
+			queued[u] = false;
+			double r = residuals[u];
+			residuals[u] = 0;
+			ranks[u] += r;
+			localResidual -= r;
+
+			int row = rowOf[u];
+			int outgoingSize = offsets[row+1] - offsets[row];
+			if(outgoingSize == 0){
+				continue;
+			}
+			double share = df * r / outgoingSize;
+			for(int i = offsets[row]; i < offsets[row+1]; i++){
+				int v = targets[i];
+				if(owner[v] == rank){
+					localResidual += share;
+					residuals[v] += share;
+					if(!queued[v] && residuals[v] > threshold){
+						queued[v] = true;
+						next[nextSize++] = v;
+					}
+				}else{
+					if(!inTouched[v]){
+						inTouched[v] = true;
+						touched[touchedCount++] = v;
+					}
+					remoteResiduals[v] += share;
+				}
+			}
+		}
+
+		// group the touched remote urls by owner
+		Arrays.fill(sendCounts, 0);
+		for(int k = 0; k < touchedCount; k++){
+			sendCounts[owner[touched[k]]]++;
+		}
+		for(int r = 1; r < nRanks; r++){
+			sendDispls[r] = sendDispls[r-1] + sendCounts[r-1];
+		}
+		int[] fill = Arrays.copyOf(sendDispls, nRanks);
+		for(int k = 0; k < touchedCount; k++){
+			int v = touched[k];
+			int slot = fill[owner[v]]++;
+			sendTargets[slot] = v;
+			sendValues[slot] = remoteResiduals[v];
+			remoteResiduals[v] = 0;
+			inTouched[v] = false;
+		}
+
+		MPI.COMM_WORLD.Alltoall(sendCounts, 0, 1, MPI.INT, recvCounts, 0, 1, MPI.INT);
+		int[] recvDispls = SparseExchange.displacements(recvCounts);
+		int received = recvDispls[nRanks-1] + recvCounts[nRanks-1];
+		if(received > recvTargets.length){
+			recvTargets = new int[received];
+			recvValues = new double[received];
+		}
+		MPI.COMM_WORLD.Alltoallv(sendTargets, 0, sendCounts, sendDispls, MPI.INT,
+				recvTargets, 0, recvCounts, recvDispls, MPI.INT);
+		MPI.COMM_WORLD.Alltoallv(sendValues, 0, sendCounts, sendDispls, MPI.DOUBLE,
+				recvValues, 0, recvCounts, recvDispls, MPI.DOUBLE);
+		bytesSent += 4L * nRanks + (long)touchedCount * PAIR_BYTES;
+		bytesReceived += 4L * nRanks + (long)received * PAIR_BYTES;
+
+		for(int k = 0; k < received; k++){
+			int v = recvTargets[k];
+			localResidual += recvValues[k];
+			residuals[v] += recvValues[k];
+			if(!queued[v] && residuals[v] > threshold){
+				queued[v] = true;
+				next[nextSize++] = v;
+			}
+		}
+
+		int[] swap = frontier;
+		frontier = next;
+		next = swap;
+		frontierSize = nextSize;
+
+		reduceBuffer[0] = processed;
+		reduceBuffer[1] = nextSize;
+		reduceBuffer[2] = localResidual;
+		MPI.COMM_WORLD.Allreduce(reduceBuffer, 0, reduceBuffer, 0, 3, MPI.DOUBLE, MPI.SUM);
+		globalProcessed = (long)reduceBuffer[0];
+		globalActive = (long)reduceBuffer[1];
+		globalResidual = reduceBuffer[2];
+	}
+
+	/**
+	 * Write the ranks of the owned urls, scaled so that all ranks sum to 1, into rankValues.
+	 * Collective: must be called by all ranks.
+	 */
+	public void ownedRanks(double[] rankValues) {
+		double sum = 0;
+		for(int row = 0; row < localSources.length; row++){
+			sum += ranks[localSources[row]];
+		}
+		reduceBuffer[0] = sum;
+		MPI.COMM_WORLD.Allreduce(reduceBuffer, 0, reduceBuffer, 0, 1, MPI.DOUBLE, MPI.SUM);
+		for(int row = 0; row < localSources.length; row++){
+			int url = localSources[row];
+			rankValues[url] = ranks[url] / reduceBuffer[0];
+		}
+	}
+}
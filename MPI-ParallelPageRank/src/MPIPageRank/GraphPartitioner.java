@@ -0,0 +1,189 @@
+package MPIPageRank;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import PageRank.CSRGraph;
+
+/**
+ * Strategies for assigning the urls (rows of the adjacency matrix) to ranks in loadAndDistribute.
+ *
+ *   count  - contiguous blocks with the same number of urls (the original split)
+ *   edges  - contiguous blocks with about the same number of out-links
+ *   hash   - every url goes to a rank picked by a hash of the url
+ *   greedy - urls in order of decreasing out-degree, each to the rank with the least work so far
+ *
+ * The work of a url is counted as outDegree+1, so ranks of dangling urls are not free.
+ */
+public class GraphPartitioner {
+
+	public static final String[] STRATEGIES = {"count", "edges", "hash", "greedy"};
+
+	/**
+	 * @return the urls assigned to every rank, in increasing order
+	 */
+	public static int[][] assign(CSRGraph adjMatrix, int nRanks, String strategy) {
+		if(strategy.equals("edges")){
+			return byEdges(adjMatrix, nRanks);
+		}else if(strategy.equals("hash")){
+			return byHash(adjMatrix, nRanks);
+		}else if(strategy.equals("greedy")){
+			return greedy(adjMatrix, nRanks);
+		}
+		return byCount(adjMatrix, nRanks);
+	}
+
+	public static boolean isStrategy(String strategy) {
+		for(int i = 0; i < STRATEGIES.length; i++){
+			if(STRATEGIES[i].equals(strategy)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Split the urls into nRanks contiguous blocks of equal url count;
+	 * the first (totalNumOfUrls % nRanks) blocks get one extra url.
+	 */
+	static int[][] byCount(CSRGraph adjMatrix, int nRanks) {
+		int totalNumOfUrls = adjMatrix.numNodes;
+		int numOfPartitions = (totalNumOfUrls) / nRanks;
+		int remainderUrls = (totalNumOfUrls) % nRanks;
+		int[] blockStart = new int[nRanks+1];
+		for(int i = 0; i < nRanks; i++){
+			int blockSize = (i < remainderUrls) ? numOfPartitions + 1 : numOfPartitions;
+			blockStart[i+1] = blockStart[i] + blockSize;
+		}
+		return blocks(blockStart);
+	}
+
+	/**
+	 * Contiguous blocks cut where the running work (outDegree+1 per url) passes i/nRanks of the total.
+	 */
+	static int[][] byEdges(CSRGraph adjMatrix, int nRanks) {
+		int totalNumOfUrls = adjMatrix.numNodes;
+		long totalWork = (long)adjMatrix.numEdges() + totalNumOfUrls;
+		int[] blockStart = new int[nRanks+1];
+		int url = 0;
+		for(int i = 1; i < nRanks; i++){
+			long cut = totalWork * i / nRanks;
+			// work of urls 0..url-1 is offsets[url] + url
+			while(url < totalNumOfUrls && (long)adjMatrix.offsets[url+1] + url + 1 <= cut){
+				url++;
+			}
+			blockStart[i] = url;
+		}
+		blockStart[nRanks] = totalNumOfUrls;
+		return blocks(blockStart);
+	}
+
+	static int[][] byHash(CSRGraph adjMatrix, int nRanks) {
+		int totalNumOfUrls = adjMatrix.numNodes;
+		int[] rankOf = new int[totalNumOfUrls];
+		for(int url = 0; url < totalNumOfUrls; url++){
+			// Fibonacci hashing spreads runs of consecutive urls over all ranks
+			int h = url * 0x9E3779B1;
+			rankOf[url] = (int)(((h >>> 1) * (long)nRanks) >>> 31);
+		}
+		return group(rankOf, nRanks);
+	}
+
+	/**
+	 * Longest processing time first: the heaviest urls are placed first, each on the least loaded rank.
+	 */
+	static int[][] greedy(CSRGraph adjMatrix, int nRanks) {
+		int totalNumOfUrls = adjMatrix.numNodes;
+
+		// counting sort of the urls by decreasing out-degree
+		int maxDegree = 0;
+		for(int url = 0; url < totalNumOfUrls; url++){
+			maxDegree = Math.max(maxDegree, adjMatrix.outDegree(url));
+		}
+		int[] bucketStart = new int[maxDegree+2];
+		for(int url = 0; url < totalNumOfUrls; url++){
+			bucketStart[maxDegree - adjMatrix.outDegree(url) + 1]++;
+		}
+		for(int d = 0; d <= maxDegree; d++){
+			bucketStart[d+1] += bucketStart[d];
+		}
+		int[] order = new int[totalNumOfUrls];
+		for(int url = 0; url < totalNumOfUrls; url++){
+			order[bucketStart[maxDegree - adjMatrix.outDegree(url)]++] = url;
+		}
+
+		// ranks keyed by work so far, ties broken by rank id
+		final long[] work = new long[nRanks];
+		PriorityQueue<Integer> ranks = new PriorityQueue<Integer>(nRanks, new Comparator<Integer>()
+		{
+			public int compare(Integer a, Integer b)
+			{
+				int c = Long.compare(work[a], work[b]);
+				return (c != 0) ? c : a.compareTo(b);
+			}
+		});
+		for(int r = 0; r < nRanks; r++){
+			ranks.add(r);
+		}
+		int[] rankOf = new int[totalNumOfUrls];
+		for(int k = 0; k < totalNumOfUrls; k++){
+			int url = order[k];
+			int r = ranks.poll();
+			rankOf[url] = r;
+			work[r] += adjMatrix.outDegree(url) + 1;
+			ranks.add(r);
+		}
+		return group(rankOf, nRanks);
+	}
+
+	/**
+	 * @return number of out-links whose target is assigned to a different rank than the source
+	 */
+	public static long cutEdges(CSRGraph adjMatrix, int[][] rowsOfRank) {
+		int[] rankOf = new int[adjMatrix.numNodes];
+		for(int r = 0; r < rowsOfRank.length; r++){
+			for(int k = 0; k < rowsOfRank[r].length; k++){
+				rankOf[rowsOfRank[r][k]] = r;
+			}
+		}
+		long cut = 0;
+		for(int url = 0; url < adjMatrix.numNodes; url++){
+			for(int e = adjMatrix.offsets[url]; e < adjMatrix.offsets[url+1]; e++){
+				if(rankOf[adjMatrix.targets[e]] != rankOf[url]){
+					cut++;
+				}
+			}
+		}
+		return cut;
+	}
+
+	private static int[][] blocks(int[] blockStart) {
+		int nRanks = blockStart.length - 1;
+		int[][] rowsOfRank = new int[nRanks][];
+		for(int i = 0; i < nRanks; i++){
+			rowsOfRank[i] = new int[blockStart[i+1] - blockStart[i]];
+			for(int k = 0; k < rowsOfRank[i].length; k++){
+				rowsOfRank[i][k] = blockStart[i] + k;
+			}
+		}
+		return rowsOfRank;
+	}
+
+	private static int[][] group(int[] rankOf, int nRanks) {
+		int[] counts = new int[nRanks];
+		for(int url = 0; url < rankOf.length; url++){
+			counts[rankOf[url]]++;
+		}
+		int[][] rowsOfRank = new int[nRanks][];
+		for(int r = 0; r < nRanks; r++){
+			rowsOfRank[r] = new int[counts[r]];
+		}
+		Arrays.fill(counts, 0);
+		for(int url = 0; url < rankOf.length; url++){
+			int r = rankOf[url];
+			rowsOfRank[r][counts[r]++] = url;
+		}
+		return rowsOfRank;
+	}
+}
@@ -0,0 +1,304 @@
+package MPIPageRank;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import PageRank.CSRGraph;
+
+/**
+ * Thread pool over the local rows of one MPI rank, for running one rank per node instead of one per core.
+ *
+ * The threads only compute: they fill the rank's newRankValues with its partial sums, and the calling
+ * (main) thread then does the Allreduce, so MPJ is only ever called from one thread.
+ *
+ *   pull - the urls are split into ranges and each range is gathered by one task straight into
+ *          newRankValues; no extra buffers.
+ *   push - the local rows are split into one block of about the same number of out-links per thread;
+ *          each block scatters into its own full length buffer, and the buffers are then summed into
+ *          newRankValues by url range. This costs one rank vector per thread, so pull is the mode to
+ *          use when memory per node matters.
+ *
+ * The tasks of both modes cover fixed ranges and are built once by setInLinks()/setPushBlocks(); every
+ * iteration reinitializes and forks the same task objects, so the iterations do not allocate.
+ */
+public class HybridCalculator {
+
+	// ranges smaller than this are not split further
+	private static final int MIN_URLS_PER_TASK = 1024;
+
+	private final ForkJoinPool pool;
+	private final int size;
+	private final double df;
+	private final int[] localSources;
+	private final CSRGraph localAdjMatrix;
+	private final int grain;
+
+	// pull: local in-links and contributions, as in MPIPageRank.calPerIterationPull
+	private int[] inOffsets;
+	private int[] inRows;
+	private double[] localInvOutDegree;
+	private double[] localContributions;
+	private ContributionTask[] contributionTasks;
+	private GatherTask[] gatherTasks;
+
+	// push: first row of every thread's block, and every thread's partial rank vector
+	private int[] blockStart;
+	private double[][] buffers;
+	private ScatterTask[] scatterTasks;
+	private SumBuffersTask[] sumTasks;
+
+	// arguments of the current iteration, set before its tasks are forked
+	private double[] rankValues;
+	private double[] newRankValues;
+	private double base;
+
+	/**
+	 * @param size number of urls
+	 * @param df damping factor
+	 * @param localSources source url of every local row
+	 * @param localAdjMatrix local rows of the adjacency matrix
+	 * @param threads number of worker threads
+	 */
+	public HybridCalculator(int size, double df, int[] localSources, CSRGraph localAdjMatrix, int threads) {
+		this.pool = new ForkJoinPool(threads);
+		this.size = size;
+		this.df = df;
+		this.localSources = localSources;
+		this.localAdjMatrix = localAdjMatrix;
+		// a few ranges per thread so that urls with many in-links do not leave threads idle
+		this.grain = Math.max(MIN_URLS_PER_TASK, size / (threads * 8));
+	}
+
+	/**
+	 * Use the pull mode with the given local in-links (see MPIPageRank.buildLocalInLinks).
+	 */
+	public void setInLinks(int[] inOffsets, int[] inRows, double[] localInvOutDegree, double[] localContributions) {
+		this.inOffsets = inOffsets;
+		this.inRows = inRows;
+		this.localInvOutDegree = localInvOutDegree;
+		this.localContributions = localContributions;
+		int[] rowRanges = ranges(localSources.length);
+		contributionTasks = new ContributionTask[rowRanges.length - 1];
+		for(int t = 0; t < contributionTasks.length; t++){
+			contributionTasks[t] = new ContributionTask(rowRanges[t], rowRanges[t+1]);
+		}
+		int[] urlRanges = ranges(size);
+		gatherTasks = new GatherTask[urlRanges.length - 1];
+		for(int t = 0; t < gatherTasks.length; t++){
+			gatherTasks[t] = new GatherTask(urlRanges[t], urlRanges[t+1]);
+		}
+	}
+
+	/**
+	 * Use the push mode: split the local rows into one block per thread and allocate the thread buffers.
+	 */
+	public void setPushBlocks() {
+		int threads = pool.getParallelism();
+		int[] offsets = localAdjMatrix.offsets;
+		int rows = localSources.length;
+		long totalWork = (long)offsets[rows] + rows;
+		blockStart = new int[threads+1];
+		int row = 0;
+		for(int t = 1; t < threads; t++){
+			long cut = totalWork * t / threads;
+			while(row < rows && (long)offsets[row+1] + row + 1 <= cut){
+				row++;
+			}
+			blockStart[t] = row;
+		}
+		blockStart[threads] = rows;
+		buffers = new double[threads][size];
+		scatterTasks = new ScatterTask[threads];
+		for(int t = 0; t < threads; t++){
+			scatterTasks[t] = new ScatterTask(t);
+		}
+		int[] urlRanges = ranges(size);
+		sumTasks = new SumBuffersTask[urlRanges.length - 1];
+		for(int t = 0; t < sumTasks.length; t++){
+			sumTasks[t] = new SumBuffersTask(urlRanges[t], urlRanges[t+1]);
+		}
+	}
+
+	/**
+	 * One pull iteration: reads rankValues, writes this rank's partial sums into newRankValues.
+	 */
+	public void pull(double[] rankValues, double[] newRankValues, int nRanks) {
+		this.rankValues = rankValues;
+		this.newRankValues = newRankValues;
+		runAll(contributionTasks);
+		double danglingValues = 0;
+		for(int t = 0; t < contributionTasks.length; t++){
+			danglingValues += contributionTasks[t].danglingValues;
+		}
+		base = (1-df) / size / nRanks + danglingValues;
+		runAll(gatherTasks);
+	}
+
+	/**
+	 * One push iteration: reads rankValues, writes this rank's partial sums into newRankValues.
+	 */
+	public void push(double[] rankValues, double[] newRankValues, int nRanks) {
+		this.rankValues = rankValues;
+		this.newRankValues = newRankValues;
+		runAll(scatterTasks);
+		double danglingValues = 0;
+		for(int t = 0; t < scatterTasks.length; t++){
+			danglingValues += scatterTasks[t].danglingValues;
+		}
+		base = (1-df) / size / nRanks + danglingValues;
+		runAll(sumTasks);
+	}
+
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * @return boundaries of ranges of about grain entries covering 0..n, first 0 and last n
+	 */
+	private int[] ranges(int n) {
+		int count = Math.max(1, (n + grain - 1) / grain);
+		int[] bounds = new int[count + 1];
+		for(int t = 0; t <= count; t++){
+			bounds[t] = (int)((long)n * t / count);
+		}
+		return bounds;
+	}
+
+	/**
+	 * Fork the tasks on the pool and wait for all of them. The tasks are reused, so each one is
+	 * reinitialized first.
+	 */
+	private void runAll(ForkJoinTask<?>[] tasks) {
+		for(int t = 0; t < tasks.length; t++){
+			tasks[t].reinitialize();
+			pool.execute(tasks[t]);
+		}
+		for(int t = 0; t < tasks.length; t++){
+			tasks[t].join();
+		}
+	}
+
+	/**
+	 * Fills localContributions of the rows in the range and sums their dangling share.
+	 */
+	private class ContributionTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+		private double danglingValues;
+
+		ContributionTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			double dangling = 0;
+			for(int row = from; row < to; row++){
+				double sourceRank = rankValues[localSources[row]];
+				if(localInvOutDegree[row] == 0){
+					dangling += sourceRank / size * df;
+				}
+				localContributions[row] = sourceRank * localInvOutDegree[row] * df;
+			}
+			danglingValues = dangling;
+		}
+	}
+
+	/**
+	 * Gathers the local in-link contributions of the urls in the range.
+	 */
+	private class GatherTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+
+		GatherTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			for(int v = from; v < to; v++){
+				double sum = 0;
+				for(int i = inOffsets[v]; i < inOffsets[v+1]; i++){
+					sum += localContributions[inRows[i]];
+				}
+				newRankValues[v] = sum + base;
+			}
+		}
+	}
+
+	/**
+	 * Scatters the rows of one thread's block into that thread's buffer and sums their dangling share.
+	 */
+	private class ScatterTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int block;
+		private double danglingValues;
+
+		ScatterTask(int block) {
+			this.block = block;
+		}
+
+		@Override
+		protected void compute() {
+			double[] buffer = buffers[block];
+			Arrays.fill(buffer, 0);
+			int[] offsets = localAdjMatrix.offsets;
+			int[] targets = localAdjMatrix.targets;
+			double dangling = 0;
+			for(int row = blockStart[block]; row < blockStart[block+1]; row++){
+				int sourceUrl = localSources[row];
+				int outgoingSize = offsets[row+1] - offsets[row];
+				if(outgoingSize == 0){
+					dangling += rankValues[sourceUrl] / size * df;
+				}else{
+					double contribution = rankValues[sourceUrl] / outgoingSize * df;
+					for(int i = offsets[row]; i < offsets[row+1]; i++){
+						buffer[targets[i]] += contribution;
+					}
+				}
+			}
+			danglingValues = dangling;
+		}
+	}
+
+	/**
+	 * Sums the thread buffers of the urls in the range into newRankValues.
+	 */
+	private class SumBuffersTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+
+		SumBuffersTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			for(int v = from; v < to; v++){
+				double sum = base;
+				for(int t = 0; t < buffers.length; t++){
+					sum += buffers[t][v];
+				}
+				newRankValues[v] = sum;
+			}
+		}
+	}
+}
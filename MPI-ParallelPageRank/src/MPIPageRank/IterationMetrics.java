@@ -0,0 +1,174 @@
+package MPIPageRank;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+import mpi.MPI;
+
+/**
+ * Per rank, per iteration measurements of MPIPageRank (-metrics), combined over the ranks once at the end.
+ *
+ * Every rank records its own numbers into a growing double array, a few System.nanoTime() calls and
+ * array stores per iteration, so it can stay on for long runs. Nothing is sent until write(), which
+ * gathers all samples to rank 0 with one Gather. Rank 0 then writes, for every metric, the minimum,
+ * average and maximum over the ranks and the rank that had the maximum, which points at stragglers
+ * (compute_ms) and communication bound runs (exchange_ms, residual_ms).
+ *
+ * Phases, once per run:
+ *   read_ms         reading the input (rank 0 only with -load root, every rank with -load parallel)
+ *   distribute_ms   sending the rows to the ranks and agreeing on the url count
+ *   setup_ms        building in-links and exchange buffers before the first iteration
+ *   local_urls, local_links
+ * Iterations:
+ *   iteration_ms    the whole iteration
+ *   compute_ms      local computation
+ *   exchange_ms     the rank exchange (Allreduce, Alltoallv or chunks), including waiting for other ranks
+ *   residual_ms     the residual Allreduce, which is where a rank waits for the slowest one
+ *   bytes_sent, bytes_received   payload of the rank exchange
+ *   residual        L1 change, the same on every rank
+ * Metrics a mode does not measure (compute_ms and residual_ms of -mode delta, for example) are left out.
+ * The "total" rows sum every iteration metric of a rank over the iterations before taking min/avg/max.
+ *
+ * Formats: csv (phase,iteration,metric,min,avg,max,max_rank) or json (one object per line, same fields).
+ */
+public class IterationMetrics {
+
+	public static final String[] FORMATS = {"csv", "json"};
+	public static final int READ_MS = 0;
+	public static final int DISTRIBUTE_MS = 1;
+	public static final int SETUP_MS = 2;
+	public static final int LOCAL_URLS = 3;
+	public static final int LOCAL_LINKS = 4;
+	private static final String[] PHASE_METRICS = {"read_ms", "distribute_ms", "setup_ms", "local_urls", "local_links"};
+	private static final String[] ITERATION_METRICS = {"iteration_ms", "compute_ms", "exchange_ms", "residual_ms",
+			"bytes_sent", "bytes_received", "residual"};
+	private static final int PHASES = PHASE_METRICS.length;
+	private static final int METRICS = ITERATION_METRICS.length;
+
+	private final double[] phases = new double[PHASES];
+	// iteration number and METRICS values per recorded iteration
+	private int[] iterationNumbers = new int[64];
+	private double[] samples = new double[64 * METRICS];
+	private int count = 0;
+
+	public static boolean isFormat(String format) {
+		return Arrays.asList(FORMATS).contains(format);
+	}
+
+	/**
+	 * @param phase READ_MS, DISTRIBUTE_MS, SETUP_MS, LOCAL_URLS or LOCAL_LINKS
+	 */
+	public void phase(int phase, double value) {
+		phases[phase] = value;
+	}
+
+	/**
+	 * Record one iteration of this rank. Times in nanoseconds, -1 for not measured.
+	 */
+	public void record(int iteration, long iterationNanos, long computeNanos, long exchangeNanos, long residualNanos,
+			long bytesSent, long bytesReceived, double residual) {
+		if(count == iterationNumbers.length){
+			iterationNumbers = Arrays.copyOf(iterationNumbers, 2 * count);
+			samples = Arrays.copyOf(samples, 2 * count * METRICS);
+		}
+		iterationNumbers[count] = iteration;
+		int base = count * METRICS;
+		samples[base] = millis(iterationNanos);
+		samples[base+1] = millis(computeNanos);
+		samples[base+2] = millis(exchangeNanos);
+		samples[base+3] = millis(residualNanos);
+		samples[base+4] = bytesSent;
+		samples[base+5] = bytesReceived;
+		samples[base+6] = residual;
+		count++;
+	}
+
+	private static double millis(long nanos) {
+		return nanos < 0 ? Double.NaN : nanos / 1e6;
+	}
+
+	/**
+	 * Gather the samples of all ranks to rank 0, which writes the file.
+	 * Collective: must be called by all ranks, after the same number of recorded iterations.
+	 */
+	public void write(String fileName, String format) throws IOException {
+		int nRanks = MPI.COMM_WORLD.Size();
+		int rank = MPI.COMM_WORLD.Rank();
+		int length = PHASES + count * METRICS;
+		double[] local = new double[length];
+		System.arraycopy(phases, 0, local, 0, PHASES);
+		System.arraycopy(samples, 0, local, PHASES, count * METRICS);
+		// MPJ's Gather copies into the receive buffer on every rank, so all ranks allocate it
+		double[] all = new double[nRanks * length];
+		MPI.COMM_WORLD.Gather(local, 0, length, MPI.DOUBLE, all, 0, length, MPI.DOUBLE, 0);
+		if(rank != 0){
+			return;
+		}
+
+		BufferedWriter out = new BufferedWriter(new FileWriter(fileName));
+		try{
+			boolean json = format.equals("json");
+			if(!json){
+				out.write("phase,iteration,metric,min,avg,max,max_rank\n");
+			}
+			double[] values = new double[nRanks];
+			for(int m = 0; m < PHASES; m++){
+				for(int r = 0; r < nRanks; r++){
+					values[r] = all[r * length + m];
+				}
+				writeLine(out, json, "load", -1, PHASE_METRICS[m], values);
+			}
+			for(int i = 0; i < count; i++){
+				for(int m = 0; m < METRICS; m++){
+					for(int r = 0; r < nRanks; r++){
+						values[r] = all[r * length + PHASES + i * METRICS + m];
+					}
+					writeLine(out, json, "iterate", iterationNumbers[i], ITERATION_METRICS[m], values);
+				}
+			}
+			// residual is not additive over iterations
+			for(int m = 0; m < METRICS - 1; m++){
+				for(int r = 0; r < nRanks; r++){
+					values[r] = 0;
+					for(int i = 0; i < count; i++){
+						values[r] += all[r * length + PHASES + i * METRICS + m];
+					}
+				}
+				writeLine(out, json, "total", -1, ITERATION_METRICS[m], values);
+			}
+		}finally{
+			out.close();
+		}
+	}
+
+	// min, avg, max over the ranks and the rank with the max; nothing if the metric was not measured
+	private static void writeLine(BufferedWriter out, boolean json, String phase, int iteration, String metric,
+			double[] values) throws IOException {
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		double sum = 0;
+		int maxRank = 0;
+		for(int r = 0; r < values.length; r++){
+			if(Double.isNaN(values[r])){
+				return;
+			}
+			min = Math.min(min, values[r]);
+			if(values[r] > max){
+				max = values[r];
+				maxRank = r;
+			}
+			sum += values[r];
+		}
+		double avg = sum / values.length;
+		String step = iteration < 0 ? "" : Integer.toString(iteration);
+		if(json){
+			out.write("{\"phase\":\"" + phase + "\",\"iteration\":" + (iteration < 0 ? "null" : step)
+					+ ",\"metric\":\"" + metric + "\",\"min\":" + min + ",\"avg\":" + avg + ",\"max\":" + max
+					+ ",\"max_rank\":" + maxRank + "}\n");
+		}else{
+			out.write(phase + "," + step + "," + metric + "," + min + "," + avg + "," + max + "," + maxRank + "\n");
+		}
+	}
+}
@@ -1,26 +1,36 @@
 package MPIPageRank;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Locale;
 
+import PageRank.AdjacencyListParser;
+import PageRank.AsyncCheckpointWriter;
+import PageRank.CSRGraph;
+import PageRank.GaussSeidelSolver;
+import PageRank.GraphSnapshot;
+import PageRank.HeapUsage;
+import PageRank.RankCheckpoint;
+import PageRank.RankExporter;
+import PageRank.TopK;
+import PageRank.VertexOrdering;
 import mpi.MPI;
+import mpi.Request;
+import mpi.Status;
 
 public class MPIPageRank {
 	boolean debugMode = false;
-	// adjacency matrix read from file
-	private HashMap<Integer, ArrayList<Integer>> adjMatrix = new HashMap<Integer, ArrayList<Integer>>();
+	// adjacency matrix read from file by rank 0
+	private CSRGraph adjMatrix;
 
-	// local adjacency matrix to store per rank urls
-	private HashMap<Integer, ArrayList<Integer>> localAdjMatrix = new HashMap<Integer, ArrayList<Integer>>();
+	// local adjacency matrix to store per rank urls: row i holds the out-links of url localSources[i]
+	private CSRGraph localAdjMatrix;
+	// source url of every local row
+	private int[] localSources;
 	// input file name
 	private String inputFile = "";
 	// output file name
@@ -34,10 +44,90 @@ public class MPIPageRank {
 	// calculating rank values
 	//simply assume that the urls are 0,1,...,(size-1)
 	double rankValues[];
+	// second rank buffer: each iteration writes it and then swaps it with rankValues
+	private double newRankValues[];
+	// one element buffer for scalar Allreduces, reused every iteration
+	private final double[] scalarBuffer = new double[1];
 	//number of ranks
 	private int nRanks;
 	//id of ranks
 	private int rank;
+	// iteration mode: "push" scatters along local out-links, "pull" gathers over local in-links,
+	// "delta" only pushes rank that changed (see DistributedDeltaPageRank), "gauss-seidel" sweeps the
+	// owned urls in place and exchanges ranks every sync iterations (see BlockAsyncGaussSeidel)
+	private String mode = "push";
+	// gauss-seidel mode: iterations between rank exchanges, and the sweep order of the local rows
+	private int sync = 1;
+	private String order = "natural";
+	// delta mode: an owned url is processed once its unpropagated rank is above this value
+	private double threshold = 1e-10;
+
+	// local in-links for pull mode: for url v, the local rows linking to v are
+	// inRows[inOffsets[v]] ... inRows[inOffsets[v+1]-1]
+	private int[] inOffsets;
+	private int[] inRows;
+	// 1/outDegree of every local row, 0 for dangling rows
+	private double[] localInvOutDegree;
+	// rankValues[source]/outDegree*df of every local row, refilled each pull iteration
+	private double[] localContributions;
+	// stop once the L1 norm of the rank change drops below this value, 0 runs all iterations
+	private double tolerance = 0;
+	// number of iterations actually run
+	private int iterationsDone = 0;
+	// global L1 norm of the rank change in the last iteration
+	private double residual = Double.NaN;
+	// input loading: "root" reads on rank 0 and distributes, "parallel" lets every rank read its own slice
+	private String load = "root";
+	// rank exchange: "allreduce" sums full rank vectors, "sparse" sends contributions to the owner of each url
+	private String exchange = "allreduce";
+	// send/receive layout of the sparse exchange
+	private SparseExchange sparseExchange;
+	// chunked non-blocking reduction of the pipelined exchange
+	private PipelinedExchange pipelinedExchange;
+	// urls per chunk of the pipelined exchange
+	private int chunkSize = 65536;
+	// algorithm summing the full rank vectors of the allreduce exchange, see VectorAllreduce
+	private String allreduce = "mpj";
+	private VectorAllreduce vectorAllreduce;
+	// type of the exchanged contributions, "double" or "float"; ranks are kept in double either way
+	private String precision = "double";
+	// sparse exchange only: send a contribution only when it changed by more than this, 0 sends all
+	private double delta = 0;
+	// rerun with the plain double exchange and report how far the ranks are from it
+	private boolean verify = false;
+	// checkpoint file (see RankCheckpoint): written by rank 0, or by every rank as file.<rank> with
+	// -exchange sparse; null for none
+	private String checkpointFile = null;
+	// write a checkpoint every this many iterations
+	private int checkpointEvery = 10;
+	// start from the checkpoint instead of uniform ranks
+	private boolean resume = false;
+	// worker threads over the local rows; only the main thread calls MPI
+	private int threads = 1;
+	private HybridCalculator hybridCalculator;
+	// how rank 0 assigns urls to ranks, see GraphPartitioner
+	private String partition = "count";
+	// how rank 0 renumbers the urls before partitioning (see VertexOrdering), and the input url of
+	// every renumbered url on all ranks (null without renumbering)
+	private String relabel = "none";
+	private int[] originalIds = null;
+	// time spent in local computation (excluding communication), summed over iterations
+	private long computeNanos = 0;
+	// time this rank spent reading and distributing the input, and when it was done reading
+	private long loadNanos = 0;
+	private long readEnd = 0;
+	// per iteration measurements written to metricsFile at the end (see IterationMetrics), null for none
+	private String metricsFile = null;
+	private String metricsFormat = "csv";
+	private IterationMetrics metrics = null;
+	// number of urls written to the output file
+	private int top = 10;
+	// write every url's rank to this file, null for none
+	private String saveFile = null;
+	// RankExporter format of saveFile: "text" ("url rank" lines) or "binary"
+	private String saveFormat = "text";
+	// "summary" prints one line per rank at the end, "iterations" also prints one line per rank and iteration
+	private String log = "summary";
 
 	public MPIPageRank(String[] args){
 		MPI.Init(args); 
@@ -47,45 +137,109 @@ public class MPIPageRank {
 	}
 
 	public void process(){
-		loadAndDistribute();
+		long loadStart = System.nanoTime();
+		readEnd = loadStart;
+		if(load.equals("parallel")){
+			loadOwnSlice();
+		}else{
+			loadAndDistribute();
+		}
+		loadNanos = System.nanoTime() - loadStart;
+		if(metricsFile != null){
+			metrics = new IterationMetrics();
+			metrics.phase(IterationMetrics.READ_MS, (readEnd - loadStart) / 1e6);
+			metrics.phase(IterationMetrics.DISTRIBUTE_MS, (loadStart + loadNanos - readEnd) / 1e6);
+			metrics.phase(IterationMetrics.LOCAL_URLS, localSources.length);
+			metrics.phase(IterationMetrics.LOCAL_LINKS, localAdjMatrix.numEdges());
+		}
+		if(mode.equals("gauss-seidel")){
+			calculateGaussSeidel();
+			writeMetrics();
+			saveRanks();
+			printTopRanksValues();
+			return;
+		}
+		if(mode.equals("delta")){
+			calculateDelta();
+			writeMetrics();
+			saveRanks();
+			printTopRanksValues();
+			return;
+		}
+		long setupStart = System.nanoTime();
+		if(mode.equals("pull")){
+			buildLocalInLinks();
+		}
+		createExchange();
+		if(threads > 1){
+			hybridCalculator = new HybridCalculator(size, df, localSources, localAdjMatrix, threads);
+			if(mode.equals("pull")){
+				hybridCalculator.setInLinks(inOffsets, inRows, localInvOutDegree, localContributions);
+			}else{
+				hybridCalculator.setPushBlocks();
+			}
+		}
+		if(metrics != null){
+			metrics.phase(IterationMetrics.SETUP_MS, (System.nanoTime() - setupStart) / 1e6);
+		}
 		calculate();
-		if(rank == 0)
-		{
-			printTop10RanksValues();
+		writeMetrics();
+		if(exchange.equals("pipelined")){
+			System.out.println("Rank " + rank + " overlap : " + pipelinedExchange.overlapReport());
+		}
+		if(verify){
+			verifyAgainstDouble();
+		}
+		if(hybridCalculator != null){
+			hybridCalculator.shutdown();
 		}
+		saveRanks();
+		printTopRanksValues();
 	}
 
 	/**
-	 * Print the pagerank values. Before printing you should sort them according to decreasing order.
-	 * Print all the values to the output file. Print only the first 10 values to console.
-	 *
-	 * @throws IOException if an error occurs
+	 * Write the top K (-top) urls with their ranks to the output file, highest first.
+	 * Collective: every rank picks the top K of the urls it owns with a min-heap (TopK) and rank 0
+	 * merges those nRanks * K candidates, so only the owned ranks have to be valid and the rank
+	 * vector is never gathered.
 	 */
-	private void printTop10RanksValues(){
+	private void printTopRanksValues(){
+		// K slots per rank, padded with url -1 if a rank owns fewer urls
+		int[] localUrls = new int[top];
+		double[] localRanks = new double[top];
+		Arrays.fill(localUrls, -1);
+		TopK.select(rankValues, localSources, top).copyTo(localUrls, localRanks);
+		for(int k=0; k<top; k++){
+			if(localUrls[k] >= 0) localUrls[k] = originalUrl(localUrls[k]);
+		}
+		// MPJ's Gather copies into the receive buffer on every rank, so all ranks allocate it
+		int[] allUrls = new int[nRanks * top];
+		double[] allRanks = new double[nRanks * top];
+		MPI.COMM_WORLD.Gather(localUrls, 0, top, MPI.INT, allUrls, 0, top, MPI.INT, 0);
+		MPI.COMM_WORLD.Gather(localRanks, 0, top, MPI.DOUBLE, allRanks, 0, top, MPI.DOUBLE, 0);
+		if(rank != 0){
+			return;
+		}
+
+		TopK topRanks = new TopK(top);
+		for(int k=0; k<allUrls.length; k++){
+			if(allUrls[k] >= 0){
+				topRanks.offer(allUrls[k], allRanks[k]);
+			}
+		}
+		topRanks.sort();
+
 		BufferedWriter out = null;
 		try{
 			out = new BufferedWriter(new FileWriter(new File(outputFile)));
-			out.append("Top 10 URLs with Highest Page Rank values. 	\n");
-			if(debugMode) System.out.println("Top 10 URLs with Highest Page Rank values. 	\n");
-
-			HashSet<Integer> indexSet = new HashSet<Integer>();
-			//To output top 10, we don't need to sort the whole array. Sorting causes O(nlogn);
-			// We only need to find maximum of the array 10 times. The time complexity is O(10n) = O(n)
-			double maximum ;
-			int index ;
-			for(int i=0; i<10; i++){
-				index = 0;
-				maximum = 0;
-				for(int j=0; j<size-1; j++){
-					if(rankValues[j] >= maximum && !indexSet.contains(j)){
-						maximum = rankValues[j];
-						index = j;
-					}
-				}
-				indexSet.add(index);
-				if(debugMode) System.out.println(index+" : " + maximum +"	\n");
-				out.append(index+" : " + maximum +"	\n");
+			out.append("Top " + top + " URLs with Highest Page Rank values. 	\n");
+			System.out.println("Iterations: " + iterationsDone + ", L1 residual: " + residual);
+			if(debugMode) System.out.println("Top " + top + " URLs with Highest Page Rank values. 	\n");
+			for(int i=0; i<topRanks.size(); i++){
+				if(debugMode) System.out.println(topRanks.url(i)+" : " + topRanks.value(i) +"	\n");
+				out.append(topRanks.url(i)+" : " + topRanks.value(i) +"	\n");
 			}
+			out.append("Iterations: " + iterationsDone + ", L1 residual: " + residual + "	\n");
 			out.close();
 		}
 		catch(FileNotFoundException ex){
@@ -100,33 +254,466 @@ public class MPIPageRank {
 		}
 	}
 
+	/**
+	 * With -save, write the rank of every url to one file in the -saveFormat format (see RankExporter).
+	 * Collective: the records are fixed size, so every rank writes the urls it owns, in row order, at
+	 * the offset given by the url counts of the ranks before it; rank 0 only creates and sizes the file.
+	 */
+	private void saveRanks(){
+		if(saveFile == null){
+			return;
+		}
+		long start = System.nanoTime();
+		int[] counts = new int[nRanks];
+		int[] localCount = new int[]{localSources.length};
+		MPI.COMM_WORLD.Allgather(localCount, 0, 1, MPI.INT, counts, 0, 1, MPI.INT);
+		long first = 0;
+		long total = 0;
+		for(int r=0; r<nRanks; r++){
+			if(r < rank) first += counts[r];
+			total += counts[r];
+		}
+
+		// rank 0 tells the others whether the file is ready
+		int[] created = new int[]{1};
+		if(rank == 0){
+			try{
+				RankExporter.createFile(saveFile, saveFormat, total);
+			}catch(IOException ex){
+				System.err.println("Could not create " + saveFile + ": " + ex.getMessage());
+				created[0] = 0;
+			}
+		}
+		MPI.COMM_WORLD.Bcast(created, 0, 1, MPI.INT, 0);
+		if(created[0] == 0){
+			return;
+		}
+		try{
+			RankExporter exporter = RankExporter.open(saveFile, saveFormat, first);
+			try{
+				for(int row=0; row<localSources.length; row++){
+					exporter.write(originalUrl(localSources[row]), rankValues[localSources[row]]);
+				}
+			}finally{
+				exporter.close();
+			}
+		}catch(IOException ex){
+			System.err.println("Rank " + rank + " could not write to " + saveFile + ": " + ex.getMessage());
+		}
+		scalarBuffer[0] = (System.nanoTime() - start) / 1e6;
+		MPI.COMM_WORLD.Allreduce(scalarBuffer, 0, scalarBuffer, 0, 1, MPI.DOUBLE, MPI.MAX);
+		if(rank == 0) System.out.println("Saved " + total + " ranks to " + saveFile + " (" + saveFormat + ") in ms "
+				+ String.format("%.3f", scalarBuffer[0]));
+	}
+
+	/**
+	 * @return the url in the input numbering of a url of the (possibly -relabel'ed) graph
+	 */
+	private int originalUrl(int url){
+		return (originalIds == null) ? url : originalIds[url];
+	}
+
+	/**
+	 * Set up the rank exchange chosen by -exchange, -allreduce, -precision and -delta.
+	 */
+	private void createExchange(){
+		boolean floats = precision.equals("float");
+		if(exchange.equals("sparse")){
+			sparseExchange = new SparseExchange(size, localSources, localAdjMatrix, floats, delta);
+			if(debugMode) System.out.println("Rank : "+rank+" sends "+sparseExchange.sendCount()+" and receives "+sparseExchange.recvCount()+" values per iteration");
+		}
+		if(exchange.equals("pipelined")){
+			pipelinedExchange = new PipelinedExchange(size, chunkSize);
+		}
+		if(exchange.equals("allreduce")){
+			vectorAllreduce = new VectorAllreduce(allreduce, size, floats);
+			if(rank == 0 && !vectorAllreduce.algorithm().equals(allreduce)){
+				System.out.println("-allreduce " + allreduce + " needs a power of two ranks, using " + vectorAllreduce.algorithm());
+			}
+		}
+	}
+
+	/**
+	 * @return payload bytes this rank has sent in the rank exchange so far (not counting the scalar Allreduces)
+	 */
+	private long exchangeBytes(){
+		if(exchange.equals("sparse")){
+			return sparseExchange.bytesSent();
+		}else if(exchange.equals("pipelined")){
+			return pipelinedExchange.bytesSent();
+		}
+		return vectorAllreduce.bytesSent();
+	}
+
+	/**
+	 * @return payload bytes this rank has received in the rank exchange so far
+	 */
+	private long exchangeReceivedBytes(){
+		if(exchange.equals("sparse")){
+			return sparseExchange.bytesReceived();
+		}else if(exchange.equals("pipelined")){
+			return pipelinedExchange.bytesReceived();
+		}
+		return vectorAllreduce.bytesReceived();
+	}
+
+	/**
+	 * With -metrics, gather the measurements of all ranks and let rank 0 write them. Collective.
+	 */
+	private void writeMetrics(){
+		if(metrics == null){
+			return;
+		}
+		try{
+			metrics.write(metricsFile, metricsFormat);
+			if(rank == 0) System.out.println("Metrics written to " + metricsFile + " (" + metricsFormat + ")");
+		}catch(IOException ex){
+			System.err.println("Rank " + rank + " could not write " + metricsFile + ": " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * Run the same iterations again with the plain double exchange and report the L1 and largest
+	 * difference between the two rank vectors. The ranks of the first run are kept for printing.
+	 */
+	private void verifyAgainstDouble(){
+		double[] ranks = rankValues;
+		int ranksIterations = iterationsDone;
+		double ranksResidual = residual;
+		String ranksPrecision = precision;
+		double ranksDelta = delta;
+
+		String ranksCheckpointFile = checkpointFile;
+		boolean ranksResume = resume;
+
+		precision = "double";
+		delta = 0;
+		computeNanos = 0;
+		// the comparison run starts from scratch and leaves the checkpoints and metrics alone
+		IterationMetrics ranksMetrics = metrics;
+		metrics = null;
+		checkpointFile = null;
+		resume = false;
+		iterationsDone = 0;
+		residual = Double.NaN;
+		if(rank == 0) System.out.println("Verifying against the double exchange:");
+		createExchange();
+		calculate();
+		checkpointFile = ranksCheckpointFile;
+		resume = ranksResume;
+		metrics = ranksMetrics;
+
+		// compare over the local rows, where the ranks are valid in every exchange
+		double l1 = 0;
+		double max = 0;
+		for(int row=0; row<localSources.length; row++){
+			int url = localSources[row];
+			double difference = Math.abs(ranks[url] - rankValues[url]);
+			l1 += difference;
+			max = Math.max(max, difference);
+		}
+		scalarBuffer[0] = l1;
+		MPI.COMM_WORLD.Allreduce(scalarBuffer, 0, scalarBuffer, 0, 1, MPI.DOUBLE, MPI.SUM);
+		l1 = scalarBuffer[0];
+		scalarBuffer[0] = max;
+		MPI.COMM_WORLD.Allreduce(scalarBuffer, 0, scalarBuffer, 0, 1, MPI.DOUBLE, MPI.MAX);
+		max = scalarBuffer[0];
+		if(rank == 0){
+			System.out.println("Accuracy of -precision " + ranksPrecision + " -delta " + ranksDelta
+					+ " against double : L1 difference " + l1 + ", max difference " + max);
+		}
+
+		rankValues = ranks;
+		iterationsDone = ranksIterations;
+		residual = ranksResidual;
+		precision = ranksPrecision;
+		delta = ranksDelta;
+	}
+
 	private void calculate(){
 		// Assign initial pageRanks 
+		// both rank buffers are allocated once; the iterations only swap them
 		rankValues = new double[size];
+		newRankValues = new double[size];
 		for(int i=0; i < size; i++){
 			rankValues[i] = 1.0 / size;
 		}
+		if(resume){
+			readCheckpoint();
+		}
+		AsyncCheckpointWriter checkpointWriter = createCheckpointWriter();
+		boolean logIterations = log.equals("iterations");
+		int firstIteration = iterationsDone + 1;
 		
 		//compute
+		long startTime = System.nanoTime();
+		for(int i=firstIteration; i <= iterations; i++){
+			long allocatedBefore = logIterations ? AllocationCounter.threadAllocatedBytes() : 0;
+			long gcBefore = logIterations ? AllocationCounter.gcCount() : 0;
+			long iterationStart = System.nanoTime();
+			long computeBefore = computeNanos;
+			long sentBefore = (metrics != null) ? exchangeBytes() : 0;
+			long receivedBefore = (metrics != null) ? exchangeReceivedBytes() : 0;
+
+			if(exchange.equals("sparse")){
+				calPerIterationSparse(rankValues, newRankValues);
+			}else if(exchange.equals("pipelined")){
+				calPerIterationPipelined(rankValues, newRankValues);
+			}else if(hybridCalculator != null){
+				calPerIterationHybrid(rankValues, newRankValues);
+			}else if(mode.equals("pull")){
+				calPerIterationPull(rankValues, newRankValues);
+			}else{
+				calPerIteration(rankValues, newRankValues);
+			}
+			long residualStart = System.nanoTime();
+			residual = globalResidual(rankValues, newRankValues);
+			long residualNanos = System.nanoTime() - residualStart;
+			double[] swap = rankValues;
+			rankValues = newRankValues;
+			newRankValues = swap;
+			iterationsDone = i;
+
+			if(logIterations){
+				long iterationNanos = System.nanoTime() - iterationStart;
+				long allocated = AllocationCounter.threadAllocatedBytes() - allocatedBefore;
+				long collections = AllocationCounter.gcCount() - gcBefore;
+				System.out.println("Rank " + rank + " iteration " + i + " : ms " + String.format(Locale.ROOT, "%.3f", iterationNanos / 1e6)
+						+ ", residual " + residual + ", allocated bytes " + allocated + ", gc " + collections);
+			}
+			if(checkpointWriter != null && i % checkpointEvery == 0){
+				try{
+					checkpointWriter.checkpoint(i, residual, rankValues);
+				}catch(IOException ex){
+					// losing the checkpoints is no reason to lose the run
+					System.err.println("Rank " + rank + " : " + ex.getMessage() + ", checkpointing stopped");
+					checkpointWriter = null;
+				}
+			}
+			if(metrics != null){
+				long compute = computeNanos - computeBefore;
+				metrics.record(i, System.nanoTime() - iterationStart, compute, residualStart - iterationStart - compute,
+						residualNanos, exchangeBytes() - sentBefore, exchangeReceivedBytes() - receivedBefore, residual);
+			}
+			if(tolerance > 0 && residual < tolerance){
+				break;
+			}
+		}
+		long totalNanos = System.nanoTime() - startTime;
+		long bytes = exchangeBytes();
+		int iterationsRun = Math.max(1, iterationsDone - firstIteration + 1);
+
+		// per rank load, to spot imbalance between ranks (Locale.ROOT, parsed by ScalingBenchmark)
+		System.out.println("Rank " + rank + " : urls " + localSources.length + ", links " + localAdjMatrix.numEdges()
+				+ ", compute ms/iteration " + String.format(Locale.ROOT, "%.3f", computeNanos / 1e6 / iterationsRun)
+				+ ", total ms/iteration " + String.format(Locale.ROOT, "%.3f", totalNanos / 1e6 / iterationsRun)
+				+ ", sent bytes/iteration " + bytes / iterationsRun + loadAndHeap());
+		if(checkpointWriter != null){
+			try{
+				checkpointWriter.close();
+				System.out.println("Rank " + rank + " " + checkpointWriter.summary());
+			}catch(IOException ex){
+				System.err.println("Rank " + rank + " : " + ex.getMessage());
+			}
+		}
+
+	}
+
+
+	/**
+	 * @return the load time and peak heap, appended to the per rank lines
+	 */
+	private String loadAndHeap(){
+		return ", load ms " + String.format(Locale.ROOT, "%.3f", loadNanos / 1e6) + ", peak heap MB " + HeapUsage.peakMB();
+	}
+
+	/**
+	 * Delta mode: rounds of DistributedDeltaPageRank until no url has rank left to push, at most
+	 * the iteration count. Rank 0 prints the number of urls processed per round; the residual is the
+	 * rank not propagated yet. Only the ranks of owned urls are valid afterwards, as with -exchange sparse.
+	 */
+	private void calculateDelta(){
+		long startTime = System.nanoTime();
+		DistributedDeltaPageRank delta = new DistributedDeltaPageRank(size, df, threshold, localSources, localAdjMatrix);
+		if(metrics != null){
+			metrics.phase(IterationMetrics.SETUP_MS, (System.nanoTime() - startTime) / 1e6);
+		}
+		while(iterationsDone < iterations && delta.activeCount() > 0 && !(tolerance > 0 && residual < tolerance)){
+			long roundStart = System.nanoTime();
+			long sentBefore = delta.bytesSent();
+			long receivedBefore = delta.bytesReceived();
+			delta.round();
+			iterationsDone++;
+			residual = delta.remainingResidual();
+			if(metrics != null){
+				// a round mixes computation and exchanges, so only its total time is known
+				metrics.record(iterationsDone, System.nanoTime() - roundStart, -1, -1, -1,
+						delta.bytesSent() - sentBefore, delta.bytesReceived() - receivedBefore, residual);
+			}
+			if(rank == 0){
+				System.out.println("Iteration " + iterationsDone + " : active urls " + delta.processedCount() + " of " + size);
+			}
+		}
+		rankValues = new double[size];
+		delta.ownedRanks(rankValues);
+		long totalNanos = System.nanoTime() - startTime;
+
+		System.out.println("Rank " + rank + " : urls " + localSources.length + ", links " + localAdjMatrix.numEdges()
+				+ ", total ms/iteration " + String.format(Locale.ROOT, "%.3f", totalNanos / 1e6 / Math.max(1, iterationsDone))
+				+ ", sent bytes/iteration " + delta.bytesSent() / Math.max(1, iterationsDone) + loadAndHeap());
+	}
+
+	/**
+	 * Gauss-Seidel mode: sweeps of BlockAsyncGaussSeidel, synchronized every sync iterations and after
+	 * the last one. The residual is the L1 change of all sweeps since the previous synchronization (the
+	 * last sweep alone only sees the block converge against stale remote ranks), so -tolerance is
+	 * checked every sync iterations.
+	 */
+	private void calculateGaussSeidel(){
+		long startTime = System.nanoTime();
+		BlockAsyncGaussSeidel gaussSeidel = new BlockAsyncGaussSeidel(size, df, localSources, localAdjMatrix, order);
+		if(metrics != null){
+			metrics.phase(IterationMetrics.SETUP_MS, (System.nanoTime() - startTime) / 1e6);
+		}
+		double change = 0;
 		for(int i=1; i <= iterations; i++){
-			rankValues = calPerIteration(rankValues);
+			long sweepStart = System.nanoTime();
+			long sentBefore = gaussSeidel.bytesSent();
+			long receivedBefore = gaussSeidel.bytesReceived();
+			change += gaussSeidel.sweep();
+			long sweepEnd = System.nanoTime();
+			iterationsDone = i;
+			boolean synchronize = (i % sync == 0 || i == iterations);
+			if(synchronize){
+				residual = gaussSeidel.synchronize(change);
+				change = 0;
+			}
+			if(metrics != null){
+				// the residual Allreduce is part of synchronize(); between synchronizations the residual is the last one
+				long now = System.nanoTime();
+				metrics.record(i, now - sweepStart, sweepEnd - sweepStart, now - sweepEnd, -1,
+						gaussSeidel.bytesSent() - sentBefore, gaussSeidel.bytesReceived() - receivedBefore, residual);
+			}
+			if(synchronize && tolerance > 0 && residual < tolerance){
+				break;
+			}
 		}
+		rankValues = gaussSeidel.ranks();
+		long totalNanos = System.nanoTime() - startTime;
 
+		System.out.println("Rank " + rank + " : urls " + localSources.length + ", links " + localAdjMatrix.numEdges()
+				+ ", total ms/iteration " + String.format(Locale.ROOT, "%.3f", totalNanos / 1e6 / Math.max(1, iterationsDone))
+				+ ", sent bytes/iteration " + gaussSeidel.bytesSent() / Math.max(1, iterationsDone) + loadAndHeap());
+		if(rank == 0) System.out.println("Synchronizations : " + gaussSeidel.synchronizations() + " in " + iterationsDone + " iterations");
 	}
 
+	/**
+	 * With -exchange sparse every rank only has the ranks of its own urls, so it checkpoints that slice
+	 * to checkpointFile.<rank>; otherwise all ranks hold the same vector and rank 0 checkpoints it.
+	 *
+	 * @return the writer for this rank, or null if this rank does not write checkpoints
+	 */
+	private AsyncCheckpointWriter createCheckpointWriter(){
+		if(checkpointFile == null){
+			return null;
+		}
+		if(exchange.equals("sparse")){
+			return new AsyncCheckpointWriter(checkpointFile + "." + rank, size, localSources);
+		}
+		return (rank == 0) ? new AsyncCheckpointWriter(checkpointFile, size, null) : null;
+	}
 
-	private double[] calPerIteration(double[] rankValues){
-		double[] newRankValues = new double[size];
+	/**
+	 * Load the ranks written by createCheckpointWriter() into rankValues and continue after their iteration.
+	 * A full checkpoint is read by rank 0 and broadcast; slices are read by their own rank and must
+	 * hold exactly this rank's urls, i.e. the job must use the same ranks and partition as before.
+	 */
+	private void readCheckpoint(){
+		// iteration, residual and an error flag travel together
+		double[] header = new double[3];
+		try{
+			if(exchange.equals("sparse")){
+				String file = checkpointFile + "." + rank;
+				RankCheckpoint checkpoint = RankCheckpoint.read(file);
+				if(checkpoint.size != size || checkpoint.urls == null || !Arrays.equals(checkpoint.urls, localSources)){
+					throw new IOException(file + " does not hold the urls of rank " + rank
+							+ "; resume with the same number of ranks and partition");
+				}
+				for(int k=0; k<localSources.length; k++){
+					rankValues[localSources[k]] = checkpoint.values[k];
+				}
+				header[0] = checkpoint.iteration;
+				header[1] = checkpoint.residual;
+			}else if(rank == 0){
+				RankCheckpoint checkpoint = RankCheckpoint.read(checkpointFile);
+				if(checkpoint.size != size || checkpoint.urls != null){
+					throw new IOException(checkpointFile + " holds " + checkpoint.values.length + " of " + checkpoint.size
+							+ " ranks, the graph has " + size + " urls");
+				}
+				System.arraycopy(checkpoint.values, 0, rankValues, 0, size);
+				header[0] = checkpoint.iteration;
+				header[1] = checkpoint.residual;
+			}
+		}catch(IOException ex){
+			System.err.println("Rank " + rank + " : " + ex.getMessage());
+			header[2] = 1;
+		}
+
+		if(exchange.equals("sparse")){
+			// the slices are written independently, a crash can leave them at different iterations
+			double[] check = new double[]{header[2], header[0], -header[0]};
+			MPI.COMM_WORLD.Allreduce(check, 0, check, 0, 3, MPI.DOUBLE, MPI.MAX);
+			if(check[0] == 0 && check[1] != -check[2]){
+				if(rank == 0) System.err.println("The checkpoint slices are from different iterations, they can not be resumed");
+				check[0] = 1;
+			}
+			if(check[0] != 0){
+				MPI.COMM_WORLD.Abort(-1);
+			}
+		}else{
+			MPI.COMM_WORLD.Bcast(header, 0, 3, MPI.DOUBLE, 0);
+			if(header[2] != 0){
+				MPI.COMM_WORLD.Abort(-1);
+			}
+			MPI.COMM_WORLD.Bcast(rankValues, 0, size, MPI.DOUBLE, 0);
+		}
+		iterationsDone = (int)header[0];
+		residual = header[1];
+		if(rank == 0) System.out.println("Resuming after iteration " + iterationsDone + " from " + checkpointFile);
+	}
+
+	/**
+	 * L1 norm of the rank change. Every rank sums |new-old| over the urls of its local rows
+	 * and the partial sums are reduced, so all ranks get the same value and stop together.
+	 */
+	private double globalResidual(double[] rankValues, double[] newRankValues){
+		double change = 0;
+		for(int row=0; row<localSources.length; row++){
+			int url = localSources[row];
+			change += Math.abs(newRankValues[url] - rankValues[url]);
+		}
+		scalarBuffer[0] = change;
+		MPI.COMM_WORLD.Allreduce(scalarBuffer, 0, scalarBuffer, 0, 1, MPI.DOUBLE, MPI.SUM);
+		return scalarBuffer[0];
+	}
+
+	/**
+	 * One push iteration: reads rankValues, overwrites newRankValues. The vector sum works in place.
+	 */
+	private void calPerIteration(double[] rankValues, double[] newRankValues){
+		long start = System.nanoTime();
+		Arrays.fill(newRankValues, 0);
 		double danglingValues = 0;
-		for (Map.Entry<Integer, ArrayList<Integer>> entry : localAdjMatrix.entrySet()) {
-			Integer sourceUrl = entry.getKey();
-			ArrayList<Integer> outgoingUrls = entry.getValue();
-			int outgoingSize = outgoingUrls.size();
+		int[] offsets = localAdjMatrix.offsets;
+		int[] targets = localAdjMatrix.targets;
+		for (int row=0; row<localSources.length; row++) {
+			int sourceUrl = localSources[row];
+			int outgoingSize = offsets[row+1] - offsets[row];
 			if(outgoingSize == 0){
 				danglingValues +=  rankValues[sourceUrl] / size * df;
 			}else{
-				for(int i=0; i<outgoingUrls.size(); i++){
-					int aOutUrl = outgoingUrls.get(i);
+				for(int i=offsets[row]; i<offsets[row+1]; i++){
+					int aOutUrl = targets[i];
 					newRankValues[aOutUrl] +=  rankValues[sourceUrl] / outgoingSize *df;
 				}
 			}
@@ -135,12 +722,164 @@ public class MPIPageRank {
 		for(int i=0; i<size; i++){
 			newRankValues[i] +=  (1-df) / size / nRanks + danglingValues;
 		}
+		computeNanos += System.nanoTime() - start;
+
+		vectorAllreduce.sum(newRankValues);
+	}
+
+
+	/**
+	 * Sparse exchange version of calPerIteration: contributions to urls owned by this rank are added
+	 * directly, contributions to other urls are summed per target and sent to the owner. Only the entries
+	 * of owned urls (localSources) of newRankValues are valid.
+	 */
+	private void calPerIterationSparse(double[] rankValues, double[] newRankValues){
+		long start = System.nanoTime();
+		double[] sendValues = sparseExchange.sendValues;
+		int[] edgeSlot = sparseExchange.edgeSlot;
+		int[] offsets = localAdjMatrix.offsets;
+		int[] targets = localAdjMatrix.targets;
+		double danglingValues = 0;
+
+		Arrays.fill(newRankValues, 0);
+		Arrays.fill(sendValues, 0);
+		for(int row=0; row<localSources.length; row++){
+			int sourceUrl = localSources[row];
+			int outgoingSize = offsets[row+1] - offsets[row];
+			if(outgoingSize == 0){
+				danglingValues += rankValues[sourceUrl] / size * df;
+			}else{
+				double contribution = rankValues[sourceUrl] / outgoingSize * df;
+				for(int i=offsets[row]; i<offsets[row+1]; i++){
+					int slot = edgeSlot[i];
+					if(slot < 0){
+						newRankValues[targets[i]] += contribution;
+					}else{
+						sendValues[slot] += contribution;
+					}
+				}
+			}
+		}
+
+		computeNanos += System.nanoTime() - start;
+		sparseExchange.exchange(newRankValues);
+		scalarBuffer[0] = danglingValues;
+		MPI.COMM_WORLD.Allreduce(scalarBuffer, 0, scalarBuffer, 0, 1, MPI.DOUBLE, MPI.SUM);
+
+		double base = (1-df) / size + scalarBuffer[0];
+		for(int row=0; row<localSources.length; row++){
+			newRankValues[localSources[row]] += base;
+		}
+	}
+
+	/**
+	 * Transpose the local part of the adjacency matrix once, so that calPerIterationPull can gather
+	 * the contributions of each url instead of scattering writes along out-links.
+	 */
+	private void buildLocalInLinks(){
+		int localRows = localSources.length;
+		int localEdges = localAdjMatrix.numEdges();
+		int[] offsets = localAdjMatrix.offsets;
+		int[] targets = localAdjMatrix.targets;
+		localInvOutDegree = localAdjMatrix.inverseOutDegrees();
+		localContributions = new double[localRows];
+		inOffsets = new int[size+1];
+
+		for(int i=0; i<localEdges; i++){
+			inOffsets[targets[i]+1]++;
+		}
+		for(int v=0; v<size; v++){
+			inOffsets[v+1] += inOffsets[v];
+		}
+
+		inRows = new int[localEdges];
+		int[] next = new int[size];
+		System.arraycopy(inOffsets, 0, next, 0, size);
+		for(int row=0; row<localRows; row++){
+			for(int i=offsets[row]; i<offsets[row+1]; i++){
+				inRows[next[targets[i]]++] = row;
+			}
+		}
+		if(debugMode) System.out.println("Rank : "+rank+" local rows : "+localRows+" local in-links : "+localEdges);
+	}
+
+	/**
+	 * Pull version of calPerIteration: every url sums the contributions of the local rows linking to it,
+	 * so newRankValues is written sequentially, once per url.
+	 */
+	private void calPerIterationPull(double[] rankValues, double[] newRankValues){
+		long start = System.nanoTime();
+		double base = localContributions(rankValues);
+		gatherRange(0, size, base, newRankValues);
+		computeNanos += System.nanoTime() - start;
+
+		vectorAllreduce.sum(newRankValues);
+	}
+
+	/**
+	 * Threaded version of calPerIteration / calPerIterationPull: the worker threads fill newRankValues
+	 * with this rank's partial sums, then the main thread sums them over all ranks.
+	 */
+	private void calPerIterationHybrid(double[] rankValues, double[] newRankValues){
+		long start = System.nanoTime();
+		if(mode.equals("pull")){
+			hybridCalculator.pull(rankValues, newRankValues, nRanks);
+		}else{
+			hybridCalculator.push(rankValues, newRankValues, nRanks);
+		}
+		computeNanos += System.nanoTime() - start;
+
+		vectorAllreduce.sum(newRankValues);
+	}
+
+	/**
+	 * Pipelined version of calPerIterationPull: the urls are gathered chunk by chunk and every finished
+	 * chunk is sent to its owner while the next one is computed (see PipelinedExchange).
+	 */
+	private void calPerIterationPipelined(double[] rankValues, double[] newRankValues){
+		long start = System.nanoTime();
+		pipelinedExchange.begin();
+		double base = localContributions(rankValues);
+		for(int k=0; k<pipelinedExchange.numChunks(); k++){
+			int from = pipelinedExchange.chunkStart(k, size);
+			int to = pipelinedExchange.chunkStart(k+1, size);
+			gatherRange(from, to, base, newRankValues);
+			pipelinedExchange.chunkReady(newRankValues, k, from, to);
+		}
+		computeNanos += System.nanoTime() - start;
 
-		MPI.COMM_WORLD.Allreduce(newRankValues, 0, newRankValues, 0, size, MPI.DOUBLE, MPI.SUM);
+		pipelinedExchange.finish(newRankValues);
+	}
 
-		return newRankValues;
+	/**
+	 * Fill localContributions for the pull modes.
+	 *
+	 * @return the share of the teleport and dangling rank this rank adds to every url
+	 */
+	private double localContributions(double[] rankValues){
+		double danglingValues = 0;
+		for(int row=0; row<localSources.length; row++){
+			double sourceRank = rankValues[localSources[row]];
+			if(localInvOutDegree[row] == 0){
+				danglingValues += sourceRank / size * df;
+			}
+			localContributions[row] = sourceRank * localInvOutDegree[row] * df;
+		}
+		return (1-df) / size / nRanks + danglingValues;
 	}
 
+	/**
+	 * Gather the local in-link contributions of urls from..to-1 into newRankValues.
+	 */
+	private void gatherRange(int from, int to, double base, double[] newRankValues){
+		for(int v=from; v<to; v++){
+			double sum = 0;
+			for(int i=inOffsets[v]; i<inOffsets[v+1]; i++){
+				sum += localContributions[inRows[i]];
+			}
+			newRankValues[v] = sum + base;
+		}
+	}
 
 	/**
 	 * Parse the command line arguments and update the instance variables.
@@ -158,17 +897,199 @@ public class MPIPageRank {
 				outputFile= args[4];
 				if(!args[5].isEmpty())	df = Double.parseDouble(args[5]);
 				if(!args[6].isEmpty())	iterations = Integer.parseInt(args[6]);
+				if((args.length - 7) % 2 != 0){
+					throw new IllegalArgumentException("Options must be given as -name value pairs");
+				}
+				for(int i=7; i<args.length; i+=2){
+					parseOption(args[i], args[i+1]);
+				}
+				if(exchange.equals("sparse") && !mode.equals("push")){
+					throw new IllegalArgumentException("-exchange sparse works with -mode push");
+				}
+				if(!partition.equals("count") && load.equals("parallel")){
+					throw new IllegalArgumentException("-partition needs -load root");
+				}
+				if((mode.equals("delta") || mode.equals("gauss-seidel"))
+						&& (!exchange.equals("allreduce") || threads > 1 || verify || checkpointFile != null)){
+					throw new IllegalArgumentException("-mode " + mode + " has its own exchange and does not take -exchange, -threads, -verify or -checkpoint");
+				}
+				if((sync != 1 || !order.equals("natural")) && !mode.equals("gauss-seidel")){
+					throw new IllegalArgumentException("-sync and -order require -mode gauss-seidel");
+				}
+				if(!relabel.equals("none") && load.equals("parallel")){
+					throw new IllegalArgumentException("-relabel needs -load root");
+				}
+				if(resume && checkpointFile == null){
+					throw new IllegalArgumentException("-resume needs -checkpoint");
+				}
+				if(exchange.equals("pipelined") && !mode.equals("pull")){
+					throw new IllegalArgumentException("-exchange pipelined works with -mode pull");
+				}
+				if(precision.equals("float") && exchange.equals("pipelined")){
+					throw new IllegalArgumentException("-precision float works with -exchange allreduce or sparse");
+				}
+				if(delta > 0 && !exchange.equals("sparse")){
+					throw new IllegalArgumentException("-delta works with -exchange sparse");
+				}
+				if(threads > 1 && !exchange.equals("allreduce")){
+					throw new IllegalArgumentException("-threads works with -exchange allreduce");
+				}
+			}catch(IllegalArgumentException e){
+				if(rank == 0){
+					System.err.println(e.getMessage());
+					printUsage();
+				}
+				System.exit(-1);
 			}catch(Exception e){
 				e.printStackTrace();
 			}
 		}
 	}
 
+	/**
+	 * Apply one optional "-name value" argument.
+	 */
+	private void parseOption(String name, String value){
+		if(name.equals("-mode")){
+			if(!value.equals("push") && !value.equals("pull") && !value.equals("delta") && !value.equals("gauss-seidel")){
+				throw new IllegalArgumentException("Unknown mode: " + value);
+			}
+			mode = value;
+		}else if(name.equals("-sync")){
+			sync = Integer.parseInt(value);
+			if(sync < 1){
+				throw new IllegalArgumentException("-sync must be at least 1");
+			}
+		}else if(name.equals("-order")){
+			if(!GaussSeidelSolver.isOrder(value)){
+				throw new IllegalArgumentException("Unknown order: " + value);
+			}
+			order = value;
+		}else if(name.equals("-tolerance")){
+			tolerance = Double.parseDouble(value);
+		}else if(name.equals("-threshold")){
+			threshold = Double.parseDouble(value);
+		}else if(name.equals("-load")){
+			if(!value.equals("root") && !value.equals("parallel")){
+				throw new IllegalArgumentException("Unknown load mode: " + value);
+			}
+			load = value;
+		}else if(name.equals("-exchange")){
+			if(!value.equals("allreduce") && !value.equals("sparse") && !value.equals("pipelined")){
+				throw new IllegalArgumentException("Unknown exchange: " + value);
+			}
+			exchange = value;
+		}else if(name.equals("-partition")){
+			if(!GraphPartitioner.isStrategy(value)){
+				throw new IllegalArgumentException("Unknown partition strategy: " + value);
+			}
+			partition = value;
+		}else if(name.equals("-relabel")){
+			if(!VertexOrdering.isOrder(value)){
+				throw new IllegalArgumentException("Unknown relabel order: " + value);
+			}
+			relabel = value;
+		}else if(name.equals("-top")){
+			top = Integer.parseInt(value);
+			if(top < 1){
+				throw new IllegalArgumentException("-top must be at least 1");
+			}
+		}else if(name.equals("-save")){
+			saveFile = value;
+		}else if(name.equals("-saveFormat")){
+			if(!RankExporter.isFormat(value)){
+				throw new IllegalArgumentException("Unknown save format: " + value);
+			}
+			saveFormat = value;
+		}else if(name.equals("-metrics")){
+			metricsFile = value;
+		}else if(name.equals("-metricsFormat")){
+			if(!IterationMetrics.isFormat(value)){
+				throw new IllegalArgumentException("Unknown metrics format: " + value);
+			}
+			metricsFormat = value;
+		}else if(name.equals("-log")){
+			if(!value.equals("summary") && !value.equals("iterations")){
+				throw new IllegalArgumentException("Unknown log level: " + value);
+			}
+			log = value;
+		}else if(name.equals("-allreduce")){
+			if(!VectorAllreduce.isAlgorithm(value)){
+				throw new IllegalArgumentException("Unknown allreduce algorithm: " + value);
+			}
+			allreduce = value;
+		}else if(name.equals("-precision")){
+			if(!value.equals("double") && !value.equals("float")){
+				throw new IllegalArgumentException("Unknown precision: " + value);
+			}
+			precision = value;
+		}else if(name.equals("-delta")){
+			delta = Double.parseDouble(value);
+		}else if(name.equals("-verify")){
+			if(!value.equals("true") && !value.equals("false")){
+				throw new IllegalArgumentException("-verify takes true or false");
+			}
+			verify = value.equals("true");
+		}else if(name.equals("-checkpoint")){
+			checkpointFile = value;
+		}else if(name.equals("-checkpointEvery")){
+			checkpointEvery = Integer.parseInt(value);
+			if(checkpointEvery < 1){
+				throw new IllegalArgumentException("-checkpointEvery must be at least 1");
+			}
+		}else if(name.equals("-resume")){
+			if(!value.equals("true") && !value.equals("false")){
+				throw new IllegalArgumentException("-resume takes true or false");
+			}
+			resume = value.equals("true");
+		}else if(name.equals("-threads")){
+			threads = Integer.parseInt(value);
+			if(threads < 1){
+				throw new IllegalArgumentException("-threads must be at least 1");
+			}
+		}else if(name.equals("-chunk")){
+			chunkSize = Integer.parseInt(value);
+			if(chunkSize < 1){
+				throw new IllegalArgumentException("-chunk must be at least 1");
+			}
+		}else{
+			throw new IllegalArgumentException("Unknown option: " + name);
+		}
+	}
+
 	private void printUsage(){
 		String usage = "Usage single node mode : mpjrun.sh -np [no. of processes] MPIPageRank "
-				+ "+[inputfilename] [outputfilename] [damping factor] [num_iterations] +"
+				+ "+[inputfilename] [outputfilename] [damping factor] [num_iterations] [options] +"
 				+ "Usage multi node mode : mpjrun.sh -dev niodev -np [no. of processes] MPIPageRank"
-				+ " [inputfilename] [outputfilename] [damping factor] [num_iterations]"; 
+				+ " [inputfilename] [outputfilename] [damping factor] [num_iterations] [options]\n"
+				+ "Options:\n"
+				+ "  -mode push|pull|delta|gauss-seidel  scatter along out-links, gather over in-links, only push changed rank,\n"
+				+ "                     or sweep owned urls in place (default push)\n"
+				+ "  -sync k            gauss-seidel mode: exchange ranks every k iterations (default 1)\n"
+				+ "  -order natural|indegree|outdegree  gauss-seidel mode: sweep order of the local urls (default natural)\n"
+				+ "  -threshold eps     delta mode: push an owned url's rank change once it is above eps (default 1e-10)\n"
+				+ "  -tolerance eps     stop early once the L1 norm of the rank change is below eps (default 0, off)\n"
+				+ "  -load root|parallel  rank 0 reads and distributes, or every rank reads its own slice (default root)\n"
+				+ "  -exchange allreduce|sparse|pipelined  sum full rank vectors, send contributions to url owners,\n"
+				+ "                     or reduce chunk by chunk while computing (default allreduce)\n"
+				+ "  -chunk n           urls per chunk of -exchange pipelined (default 65536)\n"
+				+ "  -allreduce mpj|ring|rhd  how -exchange allreduce sums the rank vectors (default mpj)\n"
+				+ "  -precision double|float  type of the exchanged contributions (default double)\n"
+				+ "  -delta eps         with -exchange sparse, only send contributions that changed by more than eps (default 0, off)\n"
+				+ "  -verify true|false  rerun with the double exchange and print the difference (default false)\n"
+				+ "  -threads n         worker threads per rank for -exchange allreduce (default 1)\n"
+				+ "  -checkpoint file   write the ranks to a binary checkpoint in the background (file.<rank> slices with -exchange sparse)\n"
+				+ "  -checkpointEvery k iterations between checkpoints (default 10)\n"
+				+ "  -resume true|false continue from the -checkpoint file(s) instead of starting over (default false)\n"
+				+ "  -partition count|edges|hash|greedy  how rank 0 assigns urls to ranks (default count)\n"
+				+ "  -relabel none|indegree|bfs  renumber the urls on rank 0 before partitioning (default none)\n"
+				+ "  -top K             number of highest ranked urls written to the output file (default 10)\n"
+				+ "  -save file         also write the rank of every url to file, every rank its own urls\n"
+				+ "  -saveFormat text|binary  fixed width \"url rank\" lines or (int url, double rank) records (default text)\n"
+				+ "  -log summary|iterations  also print time, residual, allocated bytes and GCs per iteration (default summary)\n"
+				+ "  -metrics file          write per iteration min/avg/max over the ranks of compute, exchange and residual times,\n"
+				+ "                         bytes sent and received and the load phases to file\n"
+				+ "  -metricsFormat csv|json  format of -metrics: CSV or one JSON object per line (default csv)";
 		System.out.println(usage);
 	}
 
@@ -180,166 +1101,85 @@ public class MPIPageRank {
 	 *  Rank 0 - reads from input file, loads the data to Adjacency Matrix and Sends data to others Ranks as per the blockSize
 	 *  All other Ranks - Receive their respective data (urls) from Rank0
 	 *  
+	 *  The rows of every rank are packed in CSR form and sent as two messages with Isend, so all ranks
+	 *  receive at the same time:
+	 *    tag 1 - index  : [numRows, numEdges, sources (numRows), offsets (numRows+1)]
+	 *    tag 3 - targets: the concatenated out-links of those rows (numEdges)
 	 *  
 	 *  All Ranks have a localAdjacency Matrix which holds a part of the Adjacency Matrix 
+	 *  (in CSR form, rows in the order they were received)
 	 * 
 	 */
 	private  void loadAndDistribute() 
 	{
 		int totalNumOfUrls = 0;
-		int numOfPartitions = 0;
-		int remainderUrls = 0;
-		int start = 0;
-		int blockSize = 0;
-		int sizeBuf[] = new int[1];
-		ArrayList<Integer> outgoingUrls = new  ArrayList<Integer>();
-		int source =0;
-		int outgoingUrlsLength=0;
+		int[] index;
+		int[] targets;
 
 		if(rank == 0)
 		{
-			BufferedReader in=null;
 			try{
-				in = new BufferedReader(new FileReader(inputFile));
-				ArrayList<Integer> adjList = null;
-				String [] characterArray = null;
-				String line = "";
-				while ((line = in.readLine())!=null ) {
-					adjList = new ArrayList<Integer>();
-					characterArray = line.split(" ");
-					for(int i = 1;i < characterArray.length;i++){
-						adjList.add(Integer.parseInt(characterArray[i]));
-					}
-					adjMatrix.put(Integer.parseInt(characterArray[0]), adjList );
-				}
-				in.close();
+				adjMatrix = GraphSnapshot.load(inputFile);
 			}
 			catch(FileNotFoundException ex)
 			{
 				System.err.println("File Not Found!");
 				ex.printStackTrace();
+				MPI.COMM_WORLD.Abort(-1);
 			}
 			catch(IOException ex)
 			{
 				ex.printStackTrace();
-			}
-			catch(Exception ex)
-			{
-				ex.printStackTrace();
+				MPI.COMM_WORLD.Abort(-1);
 			}
 
-			totalNumOfUrls = adjMatrix.size();   
-			numOfPartitions = (totalNumOfUrls) / nRanks;
-			remainderUrls = (totalNumOfUrls) % nRanks;
-
+			totalNumOfUrls = adjMatrix.numNodes;   
 			if(debugMode)System.out.println("np size : " + nRanks);
-			try
-			{
-				ArrayList<Integer> sourceUrls = new ArrayList<Integer>(adjMatrix.keySet());
-				if(debugMode)System.out.println("sourceUrls : "+sourceUrls);
-				int relativeStartIndex = 0, sourceNumber=0;
-				int urlIndex=0;
-				for (int i = 0; i < nRanks; i++)
-				{
-					//Calculate block size
-					
-					if(remainderUrls == 0) blockSize = numOfPartitions;
-					
-					else
-					{
-						if(i<remainderUrls) blockSize = numOfPartitions +1;
-						else blockSize=numOfPartitions;
-					}
-
-					int[] sourceArray = new int[blockSize];
-					int[] outgoingUrlsLengthArray = new int[blockSize];
-
-					urlIndex=0;
-					start = relativeStartIndex;
-					for (relativeStartIndex = start; relativeStartIndex <= ((start+blockSize)-1); relativeStartIndex++)
-					{
-						source = sourceUrls.get(sourceNumber++).intValue();
-						outgoingUrls =  adjMatrix.get(source);
-						outgoingUrlsLength = outgoingUrls.size();
-
-						sourceArray[urlIndex] =source;
-						outgoingUrlsLengthArray[urlIndex]= outgoingUrlsLength;
-						urlIndex++;
-					}
-
-					if(i!= 0)
-					{
-						sizeBuf[0]=blockSize;
-						MPI.COMM_WORLD.Send(sizeBuf, 0, 1, MPI.INT, i, 0);
-						MPI.COMM_WORLD.Send(sourceArray, 0, blockSize, MPI.INT, i, 1);
-						MPI.COMM_WORLD.Send(outgoingUrlsLengthArray, 0, blockSize, MPI.INT, i, 2);
-					}
-
-					for(int k=0;k<blockSize; k++)
-					{
-						source = sourceArray[k];
-						outgoingUrls = adjMatrix.get(source);
-						outgoingUrlsLength =outgoingUrlsLengthArray[k];
-
-						int[] outgoingUrlsArray= new int[outgoingUrlsLength];
-
-						for(int n=0;n<outgoingUrlsLength;n++)
-						{
-							outgoingUrlsArray[n]=outgoingUrls.get(n);
-						}
-						if(i==0)
-						{
-							localAdjMatrix.put(source, outgoingUrls);
-							if(debugMode)	System.out.println("Rank : " +rank+" Source : "+source + " OutgoingUrls List : "+outgoingUrls);
-						}
-						else
-						{
-							MPI.COMM_WORLD.Send(outgoingUrlsArray, 0, outgoingUrlsLength, MPI.INT, i, 3);
-						}
-					}
-				}
-				if(debugMode)System.out.println("Local matrix :" + localAdjMatrix+" --- rank : "+rank);
+			if(!relabel.equals("none")){
+				double spanBefore = VertexOrdering.averageLinkSpan(adjMatrix);
+				VertexOrdering ordering = VertexOrdering.compute(adjMatrix, relabel);
+				adjMatrix = ordering.relabel(adjMatrix);
+				originalIds = ordering.originalIds();
+				System.out.println("Relabel " + relabel + " : average link span " + String.format("%.0f", spanBefore)
+						+ " -> " + String.format("%.0f", VertexOrdering.averageLinkSpan(adjMatrix)));
 			}
-			catch(Exception ex)
+
+			int[][] rowsOfRank = GraphPartitioner.assign(adjMatrix, nRanks, partition);
+			System.out.println("Partition " + partition + " : " + GraphPartitioner.cutEdges(adjMatrix, rowsOfRank)
+					+ " of " + adjMatrix.numEdges() + " links cross ranks");
+			readEnd = System.nanoTime();
+			Request[] requests = new Request[2*(nRanks-1)];
+			for (int i = 1; i < nRanks; i++)
 			{
-				System.out.println("Error: "+ ex.getMessage());
+				int[][] packed = packRows(rowsOfRank[i]);
+				requests[2*(i-1)] = MPI.COMM_WORLD.Isend(packed[0], 0, packed[0].length, MPI.INT, i, 1);
+				requests[2*(i-1)+1] = MPI.COMM_WORLD.Isend(packed[1], 0, packed[1].length, MPI.INT, i, 3);
 			}
+			int[][] packed = packRows(rowsOfRank[0]);
+			index = packed[0];
+			targets = packed[1];
+			Request.Waitall(requests);
+
+			// rank 0 holds the whole graph only while distributing it
+			adjMatrix = null;
 		}
 		else
 		{
-			MPI.COMM_WORLD.Recv(sizeBuf, 0, 1, MPI.INT, 0, 0);
-			blockSize = sizeBuf[0];
-
-			if(debugMode) System.out.println("Block size : "+blockSize +" for rank : " +rank);
-			int[] sourceArray = new int[blockSize];
-
-			MPI.COMM_WORLD.Recv(sourceArray, 0, blockSize, MPI.INT, 0, 1);
-
-			int[] outgoingUrlsLengthArray = new int[blockSize];
-			MPI.COMM_WORLD.Recv(outgoingUrlsLengthArray, 0, blockSize, MPI.INT, 0, 2);
-
-			ArrayList<Integer> outgoingUrlsList = null;
-			for(int i=0; i<blockSize;i++)
-			{
-				source = sourceArray[i];
-				outgoingUrls = adjMatrix.get(source);
-				outgoingUrlsLength =outgoingUrlsLengthArray[i];
-
-				int[] outgoingUrlsArray= new int[outgoingUrlsLength];
-				MPI.COMM_WORLD.Recv(outgoingUrlsArray, 0, outgoingUrlsLength, MPI.INT, 0, 3);
-				outgoingUrlsList = new ArrayList<Integer>();
-				for(int m=0;m<outgoingUrlsLength;m++)
-				{
-					outgoingUrlsList.add(outgoingUrlsArray[m]);
-				}
-
-				localAdjMatrix.put(source, outgoingUrlsList);
-				if(debugMode) System.out.println("Rank : " +rank+" Source : "+source + " OutgoingUrls List : "+outgoingUrlsList);
-			}
-			if(debugMode) System.out.println("Local matrix :" + localAdjMatrix+" --- rank : "+rank);
-
+			Status status = MPI.COMM_WORLD.Probe(0, 1);
+			index = new int[status.Get_count(MPI.INT)];
+			MPI.COMM_WORLD.Recv(index, 0, index.length, MPI.INT, 0, 1);
+			targets = new int[index[1]];
+			MPI.COMM_WORLD.Recv(targets, 0, targets.length, MPI.INT, 0, 3);
 		}
 
+		int blockSize = index[0];
+		localSources = new int[blockSize];
+		System.arraycopy(index, 2, localSources, 0, blockSize);
+		int[] offsets = new int[blockSize+1];
+		System.arraycopy(index, 2+blockSize, offsets, 0, blockSize+1);
+		localAdjMatrix = new CSRGraph(blockSize, offsets, targets);
+		if(debugMode) System.out.println("Rank : "+rank+" Block size : "+blockSize+" edges : "+targets.length);
+
 		 
        
 		/** broadcast the size
@@ -353,6 +1193,91 @@ public class MPIPageRank {
 		size = totalSize[0];
 		 // now every rank should have the same values for size
 		if(debugMode)System.out.println(rank+": "+size);
+		if(!relabel.equals("none")){
+			// every rank maps its own urls back for -save, rank 0 the top urls
+			if(rank != 0) originalIds = new int[size];
+			MPI.COMM_WORLD.Bcast(originalIds, 0, size, MPI.INT, 0);
+		}
+	}
+
+	/**
+	 * Pack the given rows of the adjacency matrix into the two distribution messages.
+	 *
+	 * @return {index, targets} as described in loadAndDistribute
+	 */
+	private int[][] packRows(int[] rows){
+		int numEdges = 0;
+		for(int k=0; k<rows.length; k++){
+			numEdges += adjMatrix.outDegree(rows[k]);
+		}
+		int[] index = new int[2 + 2*rows.length + 1];
+		int[] targets = new int[numEdges];
+		index[0] = rows.length;
+		index[1] = numEdges;
+		int offsetsStart = 2 + rows.length;
+		int position = 0;
+		for(int k=0; k<rows.length; k++){
+			int source = rows[k];
+			int outgoingUrlsLength = adjMatrix.outDegree(source);
+			index[2+k] = source;
+			index[offsetsStart+k] = position;
+			System.arraycopy(adjMatrix.targets, adjMatrix.offsets[source], targets, position, outgoingUrlsLength);
+			position += outgoingUrlsLength;
+		}
+		index[offsetsStart+rows.length] = position;
+		return new int[][]{index, targets};
+	}
+
+	/**
+	 * Parallel alternative to loadAndDistribute: every rank reads the rows of its own slice of the input
+	 * (an equal byte range aligned to line boundaries, or an equal range of urls of a binary snapshot).
+	 * No adjacency data is sent between ranks and no rank ever holds the whole graph; only the number
+	 * of urls is agreed on with an Allreduce.
+	 */
+	private void loadOwnSlice()
+	{
+		CSRGraph.Builder localRows = new CSRGraph.Builder();
+		try{
+			if(GraphSnapshot.isSnapshot(inputFile)){
+				GraphSnapshot.readPart(inputFile, rank, nRanks, localRows);
+			}else{
+				AdjacencyListParser.parsePart(inputFile, rank, nRanks, localRows);
+			}
+		}
+		catch(FileNotFoundException ex)
+		{
+			System.err.println("File Not Found!");
+			ex.printStackTrace();
+			MPI.COMM_WORLD.Abort(-1);
+		}
+		catch(IOException ex)
+		{
+			ex.printStackTrace();
+			MPI.COMM_WORLD.Abort(-1);
+		}
+		localSources = localRows.rowIds();
+		localAdjMatrix = localRows.buildRows();
+		readEnd = System.nanoTime();
+
+		int totalSize[] = new int[1];
+		totalSize[0] = localSources.length;
+		MPI.COMM_WORLD.Allreduce(totalSize, 0, totalSize, 0, 1, MPI.INT, MPI.SUM);
+		size = totalSize[0];
+
+		// urls are assumed to be 0..size-1, as in loadAndDistribute
+		for(int i=0; i<localAdjMatrix.numEdges(); i++){
+			if(localAdjMatrix.targets[i] < 0 || localAdjMatrix.targets[i] >= size){
+				System.err.println("Rank "+rank+": target url "+localAdjMatrix.targets[i]+" is out of range 0.."+(size-1));
+				MPI.COMM_WORLD.Abort(-1);
+			}
+		}
+		for(int i=0; i<localSources.length; i++){
+			if(localSources[i] < 0 || localSources[i] >= size){
+				System.err.println("Rank "+rank+": url "+localSources[i]+" is out of range 0.."+(size-1));
+				MPI.COMM_WORLD.Abort(-1);
+			}
+		}
+		if(debugMode) System.out.println("Rank : "+rank+" read "+localSources.length+" rows of "+size);
 	}
 
 	public static void main(String[] args) {
@@ -0,0 +1,185 @@
+package MPIPageRank;
+
+import mpi.MPI;
+import mpi.Request;
+
+/**
+ * Chunked reduction of the rank vector that overlaps communication with the pull computation.
+ *
+ * The urls are cut into chunks of a fixed size and every chunk has an owner rank (contiguous runs of
+ * chunks per rank). As soon as a rank has computed its partial sums for a chunk it starts a non-blocking
+ * send of that chunk to the owner and goes on computing the next one. The owner has posted the matching
+ * receives before the computation started. Once all chunks are computed every rank adds up the partial
+ * sums of the chunks it owns and the owned ranges are combined with one Allgatherv.
+ *
+ * MPJ Express has no non-blocking collectives, so the reduction is built from Isend/Irecv.
+ */
+public class PipelinedExchange {
+
+	private static final int CHUNK_TAG = 20;
+
+	private final int rank;
+	private final int nRanks;
+	private final int chunkSize;
+	private final int numChunks;
+	// first chunk of every rank, nRanks+1 entries
+	private final int[] firstChunk;
+	// first url and url count owned by every rank, for the Allgatherv
+	private final int[] ownedStart;
+	private final int[] ownedCount;
+	// partial sums received from every other rank for the owned urls, [peer][url - ownedStart]
+	private final double[][] received;
+
+	private final Request[] recvRequests;
+	private final Request[] sendRequests;
+	private int sendCount;
+
+	// statistics for the overlap report
+	private long messages = 0;
+	private long arrivedBeforeWait = 0;
+	private long waitNanos = 0;
+	// payload bytes this rank has sent, chunks and Allgatherv
+	private long bytesSent = 0;
+	// payload bytes this rank has received, chunks and Allgatherv
+	private long bytesReceived = 0;
+
+	/**
+	 * @param size number of urls
+	 * @param chunkSize urls per chunk
+	 */
+	public PipelinedExchange(int size, int chunkSize) {
+		this.rank = MPI.COMM_WORLD.Rank();
+		this.nRanks = MPI.COMM_WORLD.Size();
+		this.chunkSize = chunkSize;
+		this.numChunks = (int)(((long)size + chunkSize - 1) / chunkSize);
+
+		firstChunk = new int[nRanks+1];
+		ownedStart = new int[nRanks];
+		ownedCount = new int[nRanks];
+		for(int r=0; r<=nRanks; r++){
+			firstChunk[r] = (int)((long)numChunks * r / nRanks);
+		}
+		for(int r=0; r<nRanks; r++){
+			ownedStart[r] = chunkStart(firstChunk[r], size);
+			ownedCount[r] = chunkStart(firstChunk[r+1], size) - ownedStart[r];
+		}
+
+		received = new double[nRanks][];
+		for(int peer=0; peer<nRanks; peer++){
+			received[peer] = (peer == rank) ? null : new double[ownedCount[rank]];
+		}
+		int ownedChunks = firstChunk[rank+1] - firstChunk[rank];
+		recvRequests = new Request[(nRanks-1) * ownedChunks];
+		sendRequests = new Request[numChunks - ownedChunks];
+	}
+
+	public int numChunks() {
+		return numChunks;
+	}
+
+	/**
+	 * @return first url of chunk k
+	 */
+	public int chunkStart(int k, int size) {
+		return (int)Math.min((long)k * chunkSize, size);
+	}
+
+	/**
+	 * Post the receives for the owned chunks. Call before computing the first chunk.
+	 */
+	public void begin() {
+		int n = 0;
+		for(int peer=0; peer<nRanks; peer++){
+			if(peer == rank){
+				continue;
+			}
+			for(int k=firstChunk[rank]; k<firstChunk[rank+1]; k++){
+				int from = k * chunkSize - ownedStart[rank];
+				int count = Math.min(chunkSize, ownedCount[rank] - from);
+				recvRequests[n++] = MPI.COMM_WORLD.Irecv(received[peer], from, count, MPI.DOUBLE, peer, CHUNK_TAG);
+				bytesReceived += 8L * count;
+			}
+		}
+		sendCount = 0;
+	}
+
+	/**
+	 * The partial sums of chunk k (urls from..to-1 of partialRanks) are complete; ship them to the owner.
+	 */
+	public void chunkReady(double[] partialRanks, int k, int from, int to) {
+		int owner = ownerOf(k);
+		if(owner != rank){
+			sendRequests[sendCount++] = MPI.COMM_WORLD.Isend(partialRanks, from, to - from, MPI.DOUBLE, owner, CHUNK_TAG);
+			bytesSent += 8L * (to - from);
+		}
+	}
+
+	/**
+	 * Wait for the owned chunks, add them up and share the owned ranges with every rank.
+	 * On return partialRanks holds the summed rank vector on all ranks.
+	 */
+	public void finish(double[] partialRanks) {
+		long start = System.nanoTime();
+		for(int i=0; i<recvRequests.length; i++){
+			messages++;
+			if(recvRequests[i].Test() != null){
+				arrivedBeforeWait++;
+			}
+		}
+		Request.Waitall(recvRequests);
+		waitNanos += System.nanoTime() - start;
+
+		int base = ownedStart[rank];
+		for(int peer=0; peer<nRanks; peer++){
+			if(peer == rank){
+				continue;
+			}
+			double[] values = received[peer];
+			for(int i=0; i<values.length; i++){
+				partialRanks[base+i] += values[i];
+			}
+		}
+		Request.Waitall(sendRequests);
+
+		MPI.COMM_WORLD.Allgatherv(partialRanks, base, ownedCount[rank], MPI.DOUBLE,
+				partialRanks, 0, ownedCount, ownedStart, MPI.DOUBLE);
+		bytesSent += 8L * ownedCount[rank];
+		bytesReceived += 8L * (partialRanks.length - ownedCount[rank]);
+	}
+
+	/**
+	 * @return payload bytes this rank has sent so far
+	 */
+	public long bytesSent() {
+		return bytesSent;
+	}
+
+	/**
+	 * @return payload bytes this rank has received so far
+	 */
+	public long bytesReceived() {
+		return bytesReceived;
+	}
+
+	/**
+	 * @return a line describing how much of the chunk traffic was hidden behind computation
+	 */
+	public String overlapReport() {
+		double percent = (messages == 0) ? 100 : 100.0 * arrivedBeforeWait / messages;
+		return "chunks " + numChunks + " of " + chunkSize + " urls, " + arrivedBeforeWait + " of " + messages
+				+ " chunk messages (" + String.format("%.1f", percent) + "%) arrived during computation, "
+				+ "wait ms " + String.format("%.3f", waitNanos / 1e6);
+	}
+
+	private int ownerOf(int k) {
+		// firstChunk is increasing, so a short scan from the proportional guess finds the owner
+		int r = (int)Math.min(nRanks - 1, (long)k * nRanks / Math.max(1, numChunks));
+		while(k < firstChunk[r]){
+			r--;
+		}
+		while(k >= firstChunk[r+1]){
+			r++;
+		}
+		return r;
+	}
+}
@@ -0,0 +1,295 @@
+package MPIPageRank;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import PageRank.CSRGraph;
+import PageRank.GraphSnapshot;
+import PageRank.RmatGenerator;
+import PageRank.SequentialPageRank;
+
+/**
+ * Runs SequentialPageRank and MPIPageRank over a matrix of graph sizes and process counts and writes
+ * one CSV line per run.
+ *
+ * For every URL count an R-MAT graph (PageRank.RmatGenerator) is generated once into the -graphs
+ * directory and reused by later runs with the same parameters. Every run is a separate JVM (java for
+ * SequentialPageRank, the -mpjrun launcher for MPIPageRank), so the heap of one run does not carry
+ * over into the next; the numbers are parsed from the "Timing :" line of SequentialPageRank and the
+ * per rank "Rank r : ..." lines of MPIPageRank. For MPI runs the CSV has the slowest rank: largest
+ * load time, ms/iteration, compute ms/iteration and communication ms/iteration (total minus compute,
+ * so it also holds the residual Allreduce and any time spent waiting for slower ranks), and the
+ * largest peak heap. Sent bytes are summed over the ranks. -mode delta and gauss-seidel do not split
+ * compute and communication, those columns are left empty.
+ *
+ * The output of every run is appended to [csv file].log.
+ *
+ * Usage : java MPIPageRank.ScalingBenchmark [csv file] [URL counts] [process counts] [options]
+ *   e.g. java -cp bin:lib/mpj.jar MPIPageRank.ScalingBenchmark scaling.csv 100000,1000000 1,2,4 -degree 16 -args "-mode pull"
+ *
+ * A process count of 0 stands for SequentialPageRank. Options:
+ *   -degree d         average degree of the generated graphs (default 16)
+ *   -seed n           generator seed (default 1)
+ *   -format f         text, plain or varint graph files (default plain)
+ *   -graphs dir       where the graphs and output files go (default .)
+ *   -iterations n     iterations per run (default 20)
+ *   -df d             damping factor (default 0.85)
+ *   -repeat n         runs per configuration (default 1)
+ *   -args "..."       extra options passed to both drivers, e.g. "-mode pull"
+ *   -java "..."       command and JVM options of the SequentialPageRank runs (default java)
+ *   -mpjrun "..."     launcher of the MPIPageRank runs (default mpjrun.sh)
+ *   -dev device       MPJ device (default multicore)
+ */
+public class ScalingBenchmark {
+
+	private static final Pattern SEQUENTIAL_TIMING = Pattern.compile(
+			"Timing : load ms ([0-9.]+), iterations ([0-9]+), ms/iteration ([0-9.]+), peak heap MB ([0-9.]+)");
+	private static final Pattern RANK_TIMING = Pattern.compile(
+			"Rank [0-9]+ : urls [0-9]+, links [0-9]+(?:, compute ms/iteration ([0-9.]+))?, total ms/iteration ([0-9.]+)"
+			+ ", sent bytes/iteration ([0-9]+), load ms ([0-9.]+), peak heap MB ([0-9.]+)");
+
+	private String csvFile;
+	private int[] urlCounts;
+	private int[] processCounts;
+	private double degree = 16;
+	private long seed = 1;
+	private String format = "plain";
+	private String graphs = ".";
+	private int iterations = 20;
+	private String df = "0.85";
+	private int repeat = 1;
+	private String[] driverArgs = new String[0];
+	private String[] java = {"java"};
+	private String[] mpjrun = {"mpjrun.sh"};
+	private String dev = "multicore";
+	private PrintWriter log;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		ScalingBenchmark benchmark = new ScalingBenchmark();
+		try{
+			benchmark.parseArgs(args);
+		}catch(IllegalArgumentException e){
+			System.out.println(e.getMessage());
+			System.out.println("Usage: java MPIPageRank.ScalingBenchmark [csv file] [URL counts] [process counts]"
+					+ " [-degree d] [-seed n] [-format text|plain|varint] [-graphs dir] [-iterations n] [-df d]"
+					+ " [-repeat n] [-args \"...\"] [-java \"...\"] [-mpjrun \"...\"] [-dev device]");
+			System.exit(-1);
+		}
+		benchmark.run();
+	}
+
+	private void parseArgs(String[] args) {
+		if(args.length < 3 || args.length % 2 == 0){
+			throw new IllegalArgumentException("Expected [csv file] [URL counts] [process counts] and option pairs");
+		}
+		csvFile = args[0];
+		urlCounts = parseList(args[1]);
+		processCounts = parseList(args[2]);
+		for(int i = 3; i < args.length; i += 2){
+			String name = args[i];
+			String value = args[i+1];
+			if(name.equals("-degree")){
+				degree = Double.parseDouble(value);
+			}else if(name.equals("-seed")){
+				seed = Long.parseLong(value);
+			}else if(name.equals("-format")){
+				if(!RmatGenerator.isFormat(value)){
+					throw new IllegalArgumentException("Unknown format: " + value);
+				}
+				format = value;
+			}else if(name.equals("-graphs")){
+				graphs = value;
+			}else if(name.equals("-iterations")){
+				iterations = Integer.parseInt(value);
+			}else if(name.equals("-df")){
+				df = value;
+			}else if(name.equals("-repeat")){
+				repeat = Math.max(1, Integer.parseInt(value));
+			}else if(name.equals("-args")){
+				driverArgs = split(value);
+			}else if(name.equals("-java")){
+				java = split(value);
+			}else if(name.equals("-mpjrun")){
+				mpjrun = split(value);
+			}else if(name.equals("-dev")){
+				dev = value;
+			}else{
+				throw new IllegalArgumentException("Unknown option: " + name);
+			}
+		}
+	}
+
+	private void run() throws IOException, InterruptedException {
+		new File(graphs).mkdirs();
+		log = new PrintWriter(new FileWriter(csvFile + ".log", true));
+		PrintWriter csv = new PrintWriter(new FileWriter(csvFile));
+		try{
+			csv.println("program,urls,links,processes,run,load ms,ms/iteration,compute ms/iteration,comm ms/iteration,"
+					+ "sent bytes/iteration,peak heap MB,wall ms,status");
+			for(int urls : urlCounts){
+				String graphFile = graphFile(urls);
+				int links = generate(urls, graphFile);
+				for(int processes : processCounts){
+					for(int r = 1; r <= repeat; r++){
+						String line = processes == 0 ? runSequential(graphFile) : runMPI(graphFile, processes);
+						String row = (processes == 0 ? "sequential" : "mpi") + "," + urls + "," + links + ","
+								+ Math.max(1, processes) + "," + r + "," + line;
+						csv.println(row);
+						csv.flush();
+						System.out.println(row);
+					}
+				}
+			}
+		}finally{
+			csv.close();
+			log.close();
+		}
+	}
+
+	private String graphFile(int urls) {
+		String extension = format.equals("text") ? ".txt" : ".snap";
+		String degreeName = degree == Math.rint(degree) ? Long.toString((long)degree) : Double.toString(degree);
+		return new File(graphs, "rmat_" + urls + "_" + degreeName + "_" + seed + "_" + format + extension).getPath();
+	}
+
+	/**
+	 * Generate the graph unless the file exists already.
+	 *
+	 * @return number of links of the graph
+	 */
+	private int generate(int urls, String graphFile) throws IOException {
+		CSRGraph graph;
+		if(new File(graphFile).exists()){
+			graph = GraphSnapshot.load(graphFile);
+			System.out.println("Using " + graphFile);
+		}else{
+			long start = System.currentTimeMillis();
+			graph = new RmatGenerator(urls, degree, 0.57, 0.19, 0.19, seed).generate(Runtime.getRuntime().availableProcessors());
+			RmatGenerator.write(graph, graphFile, format);
+			System.out.println("Generated " + graphFile + " (" + graph.numEdges() + " links) in "
+					+ (System.currentTimeMillis() - start) + " ms");
+		}
+		return graph.numEdges();
+	}
+
+	private String runSequential(String graphFile) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<String>(Arrays.asList(java));
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(SequentialPageRank.class.getName());
+		command.add(graphFile);
+		command.add(new File(graphs, "scaling_sequential_output.txt").getPath());
+		command.add(Integer.toString(iterations));
+		command.add(df);
+		command.addAll(Arrays.asList(driverArgs));
+
+		long start = System.nanoTime();
+		List<String> output = new ArrayList<String>();
+		int status = execute(command, output);
+		String wall = String.format(Locale.ROOT, "%.1f", (System.nanoTime() - start) / 1e6);
+		for(String line : output){
+			Matcher m = SEQUENTIAL_TIMING.matcher(line);
+			if(m.find()){
+				return m.group(1) + "," + m.group(3) + "," + m.group(3) + ",0,0," + m.group(4) + "," + wall + "," + status;
+			}
+		}
+		return ",,,,,," + wall + "," + (status == 0 ? "no timing line" : status);
+	}
+
+	private String runMPI(String graphFile, int processes) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<String>(Arrays.asList(mpjrun));
+		command.addAll(Arrays.asList("-np", Integer.toString(processes), "-dev", dev,
+				"-cp", System.getProperty("java.class.path"), MPIPageRank.class.getName()));
+		command.add(graphFile);
+		command.add(new File(graphs, "scaling_mpi_output.txt").getPath());
+		command.add(df);
+		command.add(Integer.toString(iterations));
+		command.addAll(Arrays.asList(driverArgs));
+
+		long start = System.nanoTime();
+		List<String> output = new ArrayList<String>();
+		int status = execute(command, output);
+		String wall = String.format(Locale.ROOT, "%.1f", (System.nanoTime() - start) / 1e6);
+
+		int ranks = 0;
+		double load = 0, total = 0, compute = 0, communication = 0, heap = 0;
+		long sent = 0;
+		boolean split = true;
+		for(String line : output){
+			Matcher m = RANK_TIMING.matcher(line);
+			if(!m.find()){
+				continue;
+			}
+			ranks++;
+			double rankTotal = Double.parseDouble(m.group(2));
+			total = Math.max(total, rankTotal);
+			if(m.group(1) != null){
+				double rankCompute = Double.parseDouble(m.group(1));
+				compute = Math.max(compute, rankCompute);
+				communication = Math.max(communication, rankTotal - rankCompute);
+			}else{
+				split = false;
+			}
+			sent += Long.parseLong(m.group(3));
+			load = Math.max(load, Double.parseDouble(m.group(4)));
+			heap = Math.max(heap, Double.parseDouble(m.group(5)));
+		}
+		if(ranks != processes){
+			return ",,,,,," + wall + "," + (status == 0 ? ranks + " of " + processes + " rank lines" : status);
+		}
+		return format(load) + "," + format(total) + "," + (split ? format(compute) : "") + ","
+				+ (split ? format(communication) : "") + "," + sent + "," + String.format(Locale.ROOT, "%.1f", heap) + "," + wall + "," + status;
+	}
+
+	/**
+	 * Run the command, collect its output lines and append them to the log.
+	 *
+	 * @return exit status
+	 */
+	private int execute(List<String> command, List<String> output) throws IOException, InterruptedException {
+		log.println("$ " + command);
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectErrorStream(true);
+		Process process = builder.start();
+		BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+		try{
+			String line;
+			while((line = in.readLine()) != null){
+				output.add(line);
+				log.println(line);
+			}
+		}finally{
+			in.close();
+		}
+		log.flush();
+		return process.waitFor();
+	}
+
+	private static String format(double ms) {
+		return String.format(Locale.ROOT, "%.3f", ms);
+	}
+
+	private static int[] parseList(String list) {
+		String[] items = list.split(",");
+		int[] values = new int[items.length];
+		for(int i = 0; i < items.length; i++){
+			values[i] = Integer.parseInt(items[i].trim());
+		}
+		return values;
+	}
+
+	private static String[] split(String value) {
+		String trimmed = value.trim();
+		return trimmed.isEmpty() ? new String[0] : trimmed.split("\\s+");
+	}
+}
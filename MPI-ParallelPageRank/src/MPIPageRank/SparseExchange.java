@@ -0,0 +1,277 @@
+package MPIPageRank;
+
+import java.util.Arrays;
+
+import PageRank.CSRGraph;
+import mpi.MPI;
+
+/**
+ * Partitioned exchange of rank contributions, used instead of an Allreduce of the whole rank vector.
+ *
+ * Every url is owned by the rank that holds its row of the adjacency matrix. A rank only computes new
+ * rank values for the urls it owns, so per iteration it only has to send the contributions of its local
+ * edges whose target is owned by another rank. Contributions to the same remote url are added up locally
+ * first and travel as one value, so the volume grows with the number of distinct cut targets instead of
+ * urls x ranks.
+ *
+ * The send and receive layouts never change, so the target urls are exchanged once here and every
+ * iteration only moves one Alltoallv of doubles.
+ *
+ * Two options trade accuracy for volume:
+ *   floats    - the contributions travel as float32 (half the bytes)
+ *   threshold - delta encoding: the owner keeps the last value it got for every slot and a slot is only
+ *               sent, as (slot, change), when its value moved more than threshold since it was last sent.
+ *               The owner's copy of every slot is therefore never off by more than threshold. This needs
+ *               an Alltoall of counts and an Alltoallv of slot indexes on top of the values.
+ */
+public class SparseExchange {
+
+	// owner rank of every url
+	final int[] owner;
+	// slot in sendValues for every local edge, or -1 if the target is owned by this rank
+	final int[] edgeSlot;
+	// contributions to remote urls, grouped by owner rank
+	final double[] sendValues;
+
+	private final int[] sendCounts;
+	private final int[] sendDispls;
+	private final int[] recvCounts;
+	private final int[] recvDispls;
+	// owned url that every received value belongs to
+	private final int[] recvTargets;
+	private final double[] recvValues;
+
+	private final boolean floats;
+	private final double threshold;
+	// float32 send/receive buffers, only with floats
+	private float[] sendFloats;
+	private float[] recvFloats;
+	// delta encoding: what the owner currently has for every send slot, and the changed slots
+	// (index inside the block of their owner) and changes to send, grouped by owner
+	private double[] lastSent;
+	private int[] deltaSlots;
+	private double[] deltaValues;
+	private int[] deltaCounts;
+	private int[] deltaRecvCounts;
+	private int[] deltaRecvDispls;
+	private int[] deltaRecvSlots;
+	private double[] deltaRecvValues;
+	// payload bytes this rank has sent, summed over all exchanges
+	private long bytesSent = 0;
+	// payload bytes this rank has received, summed over all exchanges
+	private long bytesReceived = 0;
+
+	/**
+	 * Collective: must be called by all ranks.
+	 *
+	 * @param size number of urls
+	 * @param localSources source url of every local row
+	 * @param localAdjMatrix local rows of the adjacency matrix
+	 * @param floats send the contributions as float32
+	 * @param threshold send only changes larger than this, 0 sends every value every time
+	 */
+	public SparseExchange(int size, int[] localSources, CSRGraph localAdjMatrix, boolean floats, double threshold) {
+		int rank = MPI.COMM_WORLD.Rank();
+		int nRanks = MPI.COMM_WORLD.Size();
+
+		owner = gatherOwners(size, localSources, nRanks);
+
+		// one slot per distinct remote target
+		int[] slotOf = new int[size];
+		Arrays.fill(slotOf, -1);
+		int[] targets = localAdjMatrix.targets;
+		sendCounts = new int[nRanks];
+		int slots = 0;
+		for(int e=0; e<targets.length; e++){
+			int target = targets[e];
+			if(owner[target] != rank && slotOf[target] == -1){
+				slotOf[target] = -2;
+				sendCounts[owner[target]]++;
+				slots++;
+			}
+		}
+		sendDispls = displacements(sendCounts);
+
+		int[] sendTargets = new int[slots];
+		int[] next = Arrays.copyOf(sendDispls, nRanks);
+		edgeSlot = new int[targets.length];
+		for(int e=0; e<targets.length; e++){
+			int target = targets[e];
+			if(owner[target] == rank){
+				edgeSlot[e] = -1;
+				continue;
+			}
+			if(slotOf[target] == -2){
+				slotOf[target] = next[owner[target]]++;
+				sendTargets[slotOf[target]] = target;
+			}
+			edgeSlot[e] = slotOf[target];
+		}
+		sendValues = new double[slots];
+
+		recvCounts = new int[nRanks];
+		MPI.COMM_WORLD.Alltoall(sendCounts, 0, 1, MPI.INT, recvCounts, 0, 1, MPI.INT);
+		recvDispls = displacements(recvCounts);
+		int received = recvDispls[nRanks-1] + recvCounts[nRanks-1];
+		recvTargets = new int[received];
+		recvValues = new double[received];
+		MPI.COMM_WORLD.Alltoallv(sendTargets, 0, sendCounts, sendDispls, MPI.INT,
+				recvTargets, 0, recvCounts, recvDispls, MPI.INT);
+
+		this.floats = floats;
+		this.threshold = threshold;
+		if(threshold > 0){
+			// a delta message can never hold more than every slot
+			lastSent = new double[slots];
+			deltaSlots = new int[slots];
+			deltaValues = new double[slots];
+			deltaCounts = new int[nRanks];
+			deltaRecvCounts = new int[nRanks];
+			deltaRecvSlots = new int[received];
+			deltaRecvValues = new double[received];
+		}
+		if(floats){
+			sendFloats = new float[slots];
+			recvFloats = new float[received];
+		}
+	}
+
+	/**
+	 * Send sendValues to the owners and add the received contributions to accumulator.
+	 * Collective: must be called by all ranks.
+	 */
+	public void exchange(double[] accumulator) {
+		if(threshold > 0){
+			exchangeDeltas();
+		}else if(floats){
+			for(int k=0; k<sendValues.length; k++){
+				sendFloats[k] = (float)sendValues[k];
+			}
+			MPI.COMM_WORLD.Alltoallv(sendFloats, 0, sendCounts, sendDispls, MPI.FLOAT,
+					recvFloats, 0, recvCounts, recvDispls, MPI.FLOAT);
+			for(int k=0; k<recvValues.length; k++){
+				recvValues[k] = recvFloats[k];
+			}
+			bytesSent += 4L * sendValues.length;
+			bytesReceived += 4L * recvValues.length;
+		}else{
+			MPI.COMM_WORLD.Alltoallv(sendValues, 0, sendCounts, sendDispls, MPI.DOUBLE,
+					recvValues, 0, recvCounts, recvDispls, MPI.DOUBLE);
+			bytesSent += 8L * sendValues.length;
+			bytesReceived += 8L * recvValues.length;
+		}
+		for(int k=0; k<recvTargets.length; k++){
+			accumulator[recvTargets[k]] += recvValues[k];
+		}
+	}
+
+	/**
+	 * Send the slots that changed more than threshold and update recvValues, which keeps the last value
+	 * received for every slot between exchanges.
+	 */
+	private void exchangeDeltas() {
+		int nRanks = sendCounts.length;
+		int n = 0;
+		for(int r=0; r<nRanks; r++){
+			int first = n;
+			for(int slot=sendDispls[r]; slot<sendDispls[r]+sendCounts[r]; slot++){
+				double change = sendValues[slot] - lastSent[slot];
+				if(Math.abs(change) > threshold){
+					if(floats){
+						// the owner adds the rounded change, so keep track of exactly that
+						change = (float)change;
+					}
+					deltaSlots[n] = slot - sendDispls[r];
+					deltaValues[n] = change;
+					lastSent[slot] += change;
+					n++;
+				}
+			}
+			deltaCounts[r] = n - first;
+		}
+		int[] deltaDispls = displacements(deltaCounts);
+
+		MPI.COMM_WORLD.Alltoall(deltaCounts, 0, 1, MPI.INT, deltaRecvCounts, 0, 1, MPI.INT);
+		deltaRecvDispls = displacements(deltaRecvCounts);
+		MPI.COMM_WORLD.Alltoallv(deltaSlots, 0, deltaCounts, deltaDispls, MPI.INT,
+				deltaRecvSlots, 0, deltaRecvCounts, deltaRecvDispls, MPI.INT);
+		int received = deltaRecvDispls[nRanks-1] + deltaRecvCounts[nRanks-1];
+		if(floats){
+			for(int k=0; k<n; k++){
+				sendFloats[k] = (float)deltaValues[k];
+			}
+			MPI.COMM_WORLD.Alltoallv(sendFloats, 0, deltaCounts, deltaDispls, MPI.FLOAT,
+					recvFloats, 0, deltaRecvCounts, deltaRecvDispls, MPI.FLOAT);
+			for(int k=0; k<received; k++){
+				deltaRecvValues[k] = recvFloats[k];
+			}
+		}else{
+			MPI.COMM_WORLD.Alltoallv(deltaValues, 0, deltaCounts, deltaDispls, MPI.DOUBLE,
+					deltaRecvValues, 0, deltaRecvCounts, deltaRecvDispls, MPI.DOUBLE);
+		}
+		for(int r=0; r<nRanks; r++){
+			for(int k=deltaRecvDispls[r]; k<deltaRecvDispls[r]+deltaRecvCounts[r]; k++){
+				recvValues[recvDispls[r] + deltaRecvSlots[k]] += deltaRecvValues[k];
+			}
+		}
+		bytesSent += 4L * nRanks + (long)n * (4 + (floats ? 4 : 8));
+		bytesReceived += 4L * nRanks + (long)received * (4 + (floats ? 4 : 8));
+	}
+
+	/**
+	 * @return payload bytes this rank has sent in all exchanges so far
+	 */
+	public long bytesSent() {
+		return bytesSent;
+	}
+
+	/**
+	 * @return payload bytes this rank has received in all exchanges so far
+	 */
+	public long bytesReceived() {
+		return bytesReceived;
+	}
+
+	/**
+	 * @return number of doubles this rank sends per exchange
+	 */
+	public int sendCount() {
+		return sendValues.length;
+	}
+
+	/**
+	 * @return number of doubles this rank receives per exchange
+	 */
+	public int recvCount() {
+		return recvValues.length;
+	}
+
+	/**
+	 * Every rank learns which rank holds the row of every url.
+	 */
+	static int[] gatherOwners(int size, int[] localSources, int nRanks) {
+		int[] counts = new int[nRanks];
+		int[] localCount = new int[]{localSources.length};
+		MPI.COMM_WORLD.Allgather(localCount, 0, 1, MPI.INT, counts, 0, 1, MPI.INT);
+		int[] displs = displacements(counts);
+		int[] allSources = new int[displs[nRanks-1] + counts[nRanks-1]];
+		MPI.COMM_WORLD.Allgatherv(localSources, 0, localSources.length, MPI.INT,
+				allSources, 0, counts, displs, MPI.INT);
+
+		int[] owner = new int[size];
+		for(int r=0; r<nRanks; r++){
+			for(int k=displs[r]; k<displs[r]+counts[r]; k++){
+				owner[allSources[k]] = r;
+			}
+		}
+		return owner;
+	}
+
+	static int[] displacements(int[] counts) {
+		int[] displs = new int[counts.length];
+		for(int r=1; r<counts.length; r++){
+			displs[r] = displs[r-1] + counts[r-1];
+		}
+		return displs;
+	}
+}
@@ -0,0 +1,228 @@
+package MPIPageRank;
+
+import mpi.Datatype;
+import mpi.MPI;
+
+/**
+ * In place sum of a double vector over all ranks. mpj hands the vector to MPJ's own Allreduce; ring and
+ * rhd are built from point-to-point Sendrecv.
+ *
+ *   mpj  - MPI.COMM_WORLD.Allreduce
+ *   ring - reduce-scatter around a ring followed by an allgather around the ring. Every rank sends and
+ *          receives 2*(p-1)/p of the vector in total, whatever the number of ranks.
+ *   rhd  - recursive halving reduce-scatter followed by a recursive doubling allgather. Same volume as
+ *          ring but only 2*log2(p) messages. Needs a power of two ranks, otherwise ring is used.
+ *
+ * The scratch buffer for received halves/chunks is allocated once, so the iterations allocate nothing.
+ *
+ * With floats the vector is rounded to float32 before the exchange and summed in float32, which halves
+ * the bytes on the wire; the caller's vector stays double.
+ */
+public class VectorAllreduce {
+
+	public static final String[] ALGORITHMS = {"mpj", "ring", "rhd"};
+
+	private static final int REDUCE_TAG = 30;
+	private static final int GATHER_TAG = 31;
+
+	private final int rank;
+	private final int nRanks;
+	private final int count;
+	// algorithm actually used, after the rhd -> ring fallback
+	private final String algorithm;
+	// float32 copy of the vector when summing in float, else null
+	private final float[] floatValues;
+	private final Datatype type;
+	private final int typeBytes;
+	// double[] or float[], like the exchanged vector
+	private final Object scratch;
+	// rhd: range of the vector this rank is responsible for before each halving step
+	private final int[] rangeFrom;
+	private final int[] rangeTo;
+	// payload bytes this rank has sent, summed over all calls
+	private long bytesSent = 0;
+	// payload bytes this rank has received, summed over all calls
+	private long bytesReceived = 0;
+
+	/**
+	 * @param algorithm one of ALGORITHMS
+	 * @param count length of the vectors that will be summed
+	 * @param floats exchange and sum in float32 instead of double
+	 */
+	public VectorAllreduce(String algorithm, int count, boolean floats) {
+		this.rank = MPI.COMM_WORLD.Rank();
+		this.nRanks = MPI.COMM_WORLD.Size();
+		this.count = count;
+		if(algorithm.equals("rhd") && Integer.bitCount(nRanks) != 1){
+			algorithm = "ring";
+		}
+		this.algorithm = algorithm;
+		// the first halving step receives the larger half; ring chunks are never larger than that
+		floatValues = floats ? new float[count] : null;
+		type = floats ? MPI.FLOAT : MPI.DOUBLE;
+		typeBytes = floats ? 4 : 8;
+		int scratchLength = algorithm.equals("mpj") ? 0 : count - count / 2;
+		scratch = floats ? (Object)new float[scratchLength] : (Object)new double[scratchLength];
+		int levels = Integer.numberOfTrailingZeros(nRanks);
+		rangeFrom = new int[levels];
+		rangeTo = new int[levels];
+	}
+
+	public static boolean isAlgorithm(String algorithm) {
+		for(int i = 0; i < ALGORITHMS.length; i++){
+			if(ALGORITHMS[i].equals(algorithm)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the algorithm in use (rhd becomes ring on a rank count that is not a power of two)
+	 */
+	public String algorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * @return payload bytes sent by this rank so far. For mpj this is the vector handed to
+	 *         MPJ, whatever its Allreduce sends internally.
+	 */
+	public long bytesSent() {
+		return bytesSent;
+	}
+
+	/**
+	 * @return payload bytes received by this rank so far; for mpj the summed vector MPJ hands back
+	 */
+	public long bytesReceived() {
+		return bytesReceived;
+	}
+
+	/**
+	 * Replace values[0..count-1] with the sum over all ranks. Collective: must be called by all ranks.
+	 */
+	public void sum(double[] values) {
+		Object buffer = values;
+		if(floatValues != null){
+			for(int i = 0; i < count; i++){
+				floatValues[i] = (float)values[i];
+			}
+			buffer = floatValues;
+		}
+		if(algorithm.equals("mpj")){
+			MPI.COMM_WORLD.Allreduce(buffer, 0, buffer, 0, count, type, MPI.SUM);
+			bytesSent += (long)count * typeBytes;
+			bytesReceived += (long)count * typeBytes;
+		}else if(nRanks == 1){
+			return;
+		}else if(algorithm.equals("rhd")){
+			recursiveHalvingDoubling(buffer);
+		}else{
+			ring(buffer);
+		}
+		if(floatValues != null){
+			for(int i = 0; i < count; i++){
+				values[i] = floatValues[i];
+			}
+		}
+	}
+
+	private void ring(Object values) {
+		int right = (rank + 1) % nRanks;
+		int left = (rank - 1 + nRanks) % nRanks;
+
+		// reduce-scatter: after step s this rank holds the sum of s+2 ranks for chunk rank-s-1;
+		// after nRanks-1 steps chunk rank+1 is complete
+		for(int s = 0; s < nRanks - 1; s++){
+			int send = (rank - s + nRanks) % nRanks;
+			int recv = (rank - s - 1 + nRanks) % nRanks;
+			int recvFrom = chunkStart(recv);
+			int recvCount = chunkStart(recv + 1) - recvFrom;
+			sendrecv(values, chunkStart(send), chunkStart(send + 1) - chunkStart(send), right, REDUCE_TAG,
+					scratch, 0, recvCount, left);
+			addScratch(values, recvFrom, recvCount);
+		}
+
+		// allgather: pass the complete chunks on around the ring, straight into values
+		for(int s = 0; s < nRanks - 1; s++){
+			int send = (rank + 1 - s + nRanks) % nRanks;
+			int recv = (rank - s + nRanks) % nRanks;
+			sendrecv(values, chunkStart(send), chunkStart(send + 1) - chunkStart(send), right, GATHER_TAG,
+					values, chunkStart(recv), chunkStart(recv + 1) - chunkStart(recv), left);
+		}
+	}
+
+	/**
+	 * @return first element of ring chunk k, k = 0..nRanks
+	 */
+	private int chunkStart(int k) {
+		return (int)((long)count * k / nRanks);
+	}
+
+	private void recursiveHalvingDoubling(Object values) {
+		int levels = rangeFrom.length;
+
+		// reduce-scatter: exchange half of the current range with the partner, keep and sum the other half
+		int from = 0;
+		int to = count;
+		for(int level = 0; level < levels; level++){
+			int mask = nRanks >> (level + 1);
+			int partner = rank ^ mask;
+			rangeFrom[level] = from;
+			rangeTo[level] = to;
+			int mid = from + (to - from) / 2;
+			int keepFrom, keepTo, sendFrom, sendTo;
+			if((rank & mask) == 0){
+				keepFrom = from; keepTo = mid; sendFrom = mid; sendTo = to;
+			}else{
+				keepFrom = mid; keepTo = to; sendFrom = from; sendTo = mid;
+			}
+			sendrecv(values, sendFrom, sendTo - sendFrom, partner, REDUCE_TAG,
+					scratch, 0, keepTo - keepFrom, partner);
+			addScratch(values, keepFrom, keepTo - keepFrom);
+			from = keepFrom;
+			to = keepTo;
+		}
+
+		// allgather: walk the levels back, swapping the complete range with the partner's half
+		for(int level = levels - 1; level >= 0; level--){
+			int mask = nRanks >> (level + 1);
+			int partner = rank ^ mask;
+			boolean keptLower = (rank & mask) == 0;
+			int otherFrom = keptLower ? to : rangeFrom[level];
+			int otherTo = keptLower ? rangeTo[level] : from;
+			sendrecv(values, from, to - from, partner, GATHER_TAG,
+					values, otherFrom, otherTo - otherFrom, partner);
+			from = rangeFrom[level];
+			to = rangeTo[level];
+		}
+	}
+
+	private void sendrecv(Object sendBuffer, int sendOffset, int sendCount, int dest, int tag,
+			Object recvBuffer, int recvOffset, int recvCount, int source) {
+		MPI.COMM_WORLD.Sendrecv(sendBuffer, sendOffset, sendCount, type, dest, tag,
+				recvBuffer, recvOffset, recvCount, type, source, tag);
+		bytesSent += (long)sendCount * typeBytes;
+		bytesReceived += (long)recvCount * typeBytes;
+	}
+
+	/**
+	 * values[from..from+n-1] += scratch[0..n-1]
+	 */
+	private void addScratch(Object values, int from, int n) {
+		if(values instanceof float[]){
+			float[] v = (float[])values;
+			float[] received = (float[])scratch;
+			for(int i = 0; i < n; i++){
+				v[from + i] += received[i];
+			}
+		}else{
+			double[] v = (double[])values;
+			double[] received = (double[])scratch;
+			for(int i = 0; i < n; i++){
+				v[from + i] += received[i];
+			}
+		}
+	}
+}
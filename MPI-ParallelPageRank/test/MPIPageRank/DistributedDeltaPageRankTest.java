@@ -0,0 +1,136 @@
+package MPIPageRank;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import PageRank.CSRGraph;
+import mpi.MPI;
+
+import org.junit.Test;
+
+/**
+ * DistributedDeltaPageRank against a converged power iteration (-mode pull computes the same vector),
+ * on 2 to 4 ranks.
+ *
+ * main() is the rank program (see MPJRunner). Every rank builds the same random graph, with dangling
+ * urls, keeps its rows in blocks of urls or round robin and computes the reference on the whole graph.
+ * Every url ends with a residual of at most the threshold, and a residual r changes the ranks by at most
+ * r/(1-df) before the scaling to sum 1, which at most doubles the error; so the L1 error over all owned
+ * urls must stay below 2*N*threshold/(1-df).
+ */
+public class DistributedDeltaPageRankTest {
+
+	private static final int[] SIZES = {3, 500};
+	private static final double[] THRESHOLDS = {1e-6, 1e-10};
+	private static final double DF = 0.85;
+
+	@Test
+	public void twoRanks() throws Exception {
+		MPJRunner.run(DistributedDeltaPageRankTest.class, 2);
+	}
+
+	@Test
+	public void threeRanks() throws Exception {
+		MPJRunner.run(DistributedDeltaPageRankTest.class, 3);
+	}
+
+	@Test
+	public void fourRanks() throws Exception {
+		MPJRunner.run(DistributedDeltaPageRankTest.class, 4);
+	}
+
+	public static void main(String[] args) throws IOException {
+		MPI.Init(args);
+		List<String> failures = new ArrayList<String>();
+		for(int size : SIZES){
+			for(int roundRobin = 0; roundRobin < 2; roundRobin++){
+				for(double threshold : THRESHOLDS){
+					check(size, roundRobin == 1, threshold, failures);
+				}
+			}
+		}
+		MPJRunner.report(failures);
+		MPI.Finalize();
+	}
+
+	private static void check(int size, boolean roundRobin, double threshold, List<String> failures) {
+		int rank = MPI.COMM_WORLD.Rank();
+		int nRanks = MPI.COMM_WORLD.Size();
+		String name = size + " urls, " + (roundRobin ? "round robin" : "blocks") + ", threshold " + threshold + ", rank " + rank;
+
+		// the same graph on every rank: all rows for the reference, this rank's rows for the delta run
+		Random random = new Random(size);
+		CSRGraph.Builder all = new CSRGraph.Builder();
+		CSRGraph.Builder builder = new CSRGraph.Builder();
+		for(int u = 0; u < size; u++){
+			int owner = roundRobin ? u % nRanks : (int)((long)u * nRanks / size);
+			int degree = random.nextInt(8);
+			all.startRow(u);
+			if(owner == rank){
+				builder.startRow(u);
+			}
+			for(int i = 0; i < degree; i++){
+				int target = random.nextInt(size);
+				all.addEdge(target);
+				if(owner == rank){
+					builder.addEdge(target);
+				}
+			}
+		}
+		double[] expected = powerIteration(all.build());
+		int[] localSources = builder.rowIds();
+		CSRGraph localAdjMatrix = builder.buildRows();
+
+		DistributedDeltaPageRank delta = new DistributedDeltaPageRank(size, DF, threshold, localSources, localAdjMatrix);
+		int rounds = 0;
+		while(delta.activeCount() > 0 && rounds < 10000){
+			delta.round();
+			rounds++;
+		}
+		double[] rankValues = new double[size];
+		delta.ownedRanks(rankValues);
+
+		double[] error = new double[1];
+		for(int url : localSources){
+			error[0] += Math.abs(rankValues[url] - expected[url]);
+		}
+		MPI.COMM_WORLD.Allreduce(error, 0, error, 0, 1, MPI.DOUBLE, MPI.SUM);
+		double bound = 2 * size * threshold / (1 - DF);
+		if(delta.activeCount() > 0){
+			failures.add(name + ": still " + delta.activeCount() + " active urls after " + rounds + " rounds");
+		}else if(!(error[0] <= bound)){
+			failures.add(name + ": L1 error " + error[0] + " above " + bound);
+		}
+	}
+
+	/**
+	 * 300 iterations of the driver's push calculation, dangling rank spread over all urls; this leaves
+	 * an error of 0.85^300, far below the thresholds.
+	 */
+	private static double[] powerIteration(CSRGraph graph) {
+		int n = graph.numNodes;
+		double[] ranks = new double[n];
+		double[] next = new double[n];
+		Arrays.fill(ranks, 1.0 / n);
+		for(int iteration = 0; iteration < 300; iteration++){
+			Arrays.fill(next, 0);
+			double dangling = 0;
+			for(int u = 0; u < n; u++){
+				int degree = graph.outDegree(u);
+				if(degree == 0){
+					dangling += ranks[u];
+				}
+				for(int e = graph.offsets[u]; e < graph.offsets[u+1]; e++){
+					next[graph.targets[e]] += ranks[u] / degree;
+				}
+			}
+			for(int u = 0; u < n; u++){
+				ranks[u] = (1 - DF) / n + DF * (next[u] + dangling / n);
+			}
+		}
+		return ranks;
+	}
+}
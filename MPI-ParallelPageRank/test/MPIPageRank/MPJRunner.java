@@ -0,0 +1,87 @@
+package MPIPageRank;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import mpi.MPI;
+
+/**
+ * Shared by the tests that need several ranks. The JUnit side starts a rank program (the main() of a
+ * test class) on the MPJ multicore device with $MPJ_HOME/lib/starter.jar and the test class path; the
+ * rank program collects its failed checks and calls report(), and run() asserts that rank 0 printed
+ * "checks failed: 0".
+ */
+class MPJRunner {
+
+	/**
+	 * Run rankProgram.main(args) on the given number of ranks and fail unless no check failed.
+	 */
+	static void run(Class<?> rankProgram, int ranks, String... args) throws IOException, InterruptedException {
+		String mpjHome = System.getenv("MPJ_HOME");
+		assertNotNull("MPJ_HOME must point to the MPJ Express installation", mpjHome);
+		StringBuilder classPath = new StringBuilder();
+		for(String entry : System.getProperty("java.class.path").split(File.pathSeparator)){
+			classPath.append(classPath.length() > 0 ? File.pathSeparator : "").append(new File(entry).getAbsolutePath());
+		}
+		List<String> command = new ArrayList<String>();
+		command.add("java");
+		command.add("-jar");
+		command.add(new File(mpjHome, "lib/starter.jar").getPath());
+		command.add("-np");
+		command.add(Integer.toString(ranks));
+		command.add("-dev");
+		command.add("multicore");
+		command.add("-cp");
+		command.add(classPath.toString());
+		command.add(rankProgram.getName());
+		for(String arg : args){
+			command.add(arg);
+		}
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectErrorStream(true);
+		Process process = builder.start();
+		List<String> output = new ArrayList<String>();
+		StringBuilder all = new StringBuilder();
+		BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+		try{
+			String line;
+			while((line = in.readLine()) != null){
+				output.add(line);
+				all.append('\n').append(line);
+			}
+		}finally{
+			in.close();
+		}
+		process.waitFor();
+		assertTrue(ranks + " ranks:" + all, output.contains("checks failed: 0"));
+	}
+
+	/**
+	 * Rank side, collective: every rank prints its failures, then rank 0 prints "checks failed: n"
+	 * with n summed over all ranks.
+	 */
+	static void report(List<String> failures) {
+		int nRanks = MPI.COMM_WORLD.Size();
+		int[] counts = {failures.size()};
+		int[] allCounts = new int[nRanks];
+		MPI.COMM_WORLD.Gather(counts, 0, 1, MPI.INT, allCounts, 0, 1, MPI.INT, 0);
+		for(String failure : failures){
+			System.out.println(failure);
+		}
+		int total = 0;
+		for(int r = 0; r < nRanks; r++){
+			total += allCounts[r];
+		}
+		MPI.COMM_WORLD.Barrier();
+		if(MPI.COMM_WORLD.Rank() == 0){
+			System.out.println("checks failed: " + total);
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package MPIPageRank;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import PageRank.CSRGraph;
+import mpi.MPI;
+
+import org.junit.Test;
+
+/**
+ * SparseExchange against the dense Allreduce of a full length vector, on 1 to 8 ranks.
+ *
+ * main() is the rank program (see MPJRunner). Every rank builds the same random graph and keeps its
+ * rows, in blocks of urls or round robin; graphs smaller than the rank count leave ranks without rows.
+ * Every local link contributes a value to its target, and every owned url must get the same sum as
+ * the Allreduce gives it, in five exchanges with changing values:
+ *   double - up to the order of the additions
+ *   float  - up to float32 rounding of every value sent
+ *   delta  - a slot the owner has is off by at most the -delta threshold, and an owned url gets at most
+ *            one slot from every other rank
+ */
+public class SparseExchangeTest {
+
+	private static final int[] SIZES = {1, 5, 2000};
+	private static final double DELTA = 1e-3;
+
+	@Test
+	public void oneRank() throws Exception {
+		MPJRunner.run(SparseExchangeTest.class, 1);
+	}
+
+	@Test
+	public void twoRanks() throws Exception {
+		MPJRunner.run(SparseExchangeTest.class, 2);
+	}
+
+	@Test
+	public void threeRanks() throws Exception {
+		MPJRunner.run(SparseExchangeTest.class, 3);
+	}
+
+	@Test
+	public void fourRanks() throws Exception {
+		MPJRunner.run(SparseExchangeTest.class, 4);
+	}
+
+	@Test
+	public void eightRanks() throws Exception {
+		MPJRunner.run(SparseExchangeTest.class, 8);
+	}
+
+	public static void main(String[] args) throws IOException {
+		MPI.Init(args);
+		List<String> failures = new ArrayList<String>();
+		for(int size : SIZES){
+			for(int roundRobin = 0; roundRobin < 2; roundRobin++){
+				for(int floats = 0; floats < 2; floats++){
+					check(size, roundRobin == 1, floats == 1, 0, failures);
+					check(size, roundRobin == 1, floats == 1, DELTA, failures);
+				}
+			}
+		}
+		MPJRunner.report(failures);
+		MPI.Finalize();
+	}
+
+	private static void check(int size, boolean roundRobin, boolean floats, double delta, List<String> failures) {
+		int rank = MPI.COMM_WORLD.Rank();
+		int nRanks = MPI.COMM_WORLD.Size();
+		String name = size + " urls, " + (roundRobin ? "round robin" : "blocks") + (floats ? ", float" : ", double")
+				+ (delta > 0 ? ", delta " + delta : "") + ", rank " + rank;
+
+		// the same graph on every rank, this rank's rows only
+		Random random = new Random(size);
+		CSRGraph.Builder builder = new CSRGraph.Builder();
+		for(int u = 0; u < size; u++){
+			int owner = roundRobin ? u % nRanks : (int)((long)u * nRanks / size);
+			int degree = random.nextInt(12);
+			if(owner == rank){
+				builder.startRow(u);
+			}
+			for(int i = 0; i < degree; i++){
+				int target = random.nextInt(size);
+				if(owner == rank){
+					builder.addEdge(target);
+				}
+			}
+		}
+		int[] localSources = builder.rowIds();
+		CSRGraph localAdjMatrix = builder.buildRows();
+
+		SparseExchange sparseExchange = new SparseExchange(size, localSources, localAdjMatrix, floats, delta);
+		double bound = (nRanks - 1) * delta;
+		for(int round = 0; round < 5; round++){
+			double[] dense = new double[size];
+			// sum of the absolute values added to every url, for the rounding bounds
+			double[] magnitude = new double[size];
+			double[] accumulator = new double[size];
+			Arrays.fill(sparseExchange.sendValues, 0);
+			for(int row = 0; row < localSources.length; row++){
+				for(int e = localAdjMatrix.offsets[row]; e < localAdjMatrix.offsets[row+1]; e++){
+					int target = localAdjMatrix.targets[e];
+					// steps of 1/4 that change every round, plus changes around the delta threshold
+					double value = ((localSources[row] * 7 + e * 3 + round) % 13 - 6) * 0.25 + round * (e % 5) * 0.4 * DELTA;
+					dense[target] += value;
+					magnitude[target] += Math.abs(value);
+					int slot = sparseExchange.edgeSlot[e];
+					if(slot < 0){
+						accumulator[target] += value;
+					}else{
+						sparseExchange.sendValues[slot] += value;
+					}
+				}
+			}
+			MPI.COMM_WORLD.Allreduce(dense, 0, dense, 0, size, MPI.DOUBLE, MPI.SUM);
+			MPI.COMM_WORLD.Allreduce(magnitude, 0, magnitude, 0, size, MPI.DOUBLE, MPI.SUM);
+			sparseExchange.exchange(accumulator);
+			for(int url : localSources){
+				double allowed = bound + magnitude[url] * (floats ? 1e-7 : 1e-15);
+				if(!(Math.abs(accumulator[url] - dense[url]) <= allowed)){
+					failures.add(name + ", round " + round + ": url " + url + " got " + accumulator[url]
+							+ ", expected " + dense[url] + " within " + allowed);
+					break;
+				}
+			}
+		}
+
+		// every value sent is received once
+		long[] counts = {sparseExchange.sendCount(), sparseExchange.recvCount()};
+		MPI.COMM_WORLD.Allreduce(counts, 0, counts, 0, 2, MPI.LONG, MPI.SUM);
+		if(counts[0] != counts[1]){
+			failures.add(name + ": " + counts[0] + " values sent, " + counts[1] + " received");
+		}
+	}
+}
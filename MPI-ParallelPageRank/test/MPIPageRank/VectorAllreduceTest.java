@@ -0,0 +1,122 @@
+package MPIPageRank;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mpi.MPI;
+
+import org.junit.Test;
+
+/**
+ * VectorAllreduce ring and rhd against the exact sum, on power of two and other rank counts.
+ *
+ * main() is the rank program (see MPJRunner). It sums vectors of lengths around the rank count
+ * (chunks of 0 and 1 elements) and of odd lengths, in double and float, twice per vector so the
+ * reused scratch buffer is covered.
+ */
+public class VectorAllreduceTest {
+
+	private static final int[] SIZES = {1, 2, 3, 5, 7, 8, 9, 1000, 1001, 65537};
+
+	@Test
+	public void oneRank() throws Exception {
+		MPJRunner.run(VectorAllreduceTest.class, 1);
+	}
+
+	@Test
+	public void twoRanks() throws Exception {
+		MPJRunner.run(VectorAllreduceTest.class, 2);
+	}
+
+	@Test
+	public void threeRanks() throws Exception {
+		MPJRunner.run(VectorAllreduceTest.class, 3);
+	}
+
+	@Test
+	public void fourRanks() throws Exception {
+		MPJRunner.run(VectorAllreduceTest.class, 4);
+	}
+
+	@Test
+	public void fiveRanks() throws Exception {
+		MPJRunner.run(VectorAllreduceTest.class, 5);
+	}
+
+	@Test
+	public void sixRanks() throws Exception {
+		MPJRunner.run(VectorAllreduceTest.class, 6);
+	}
+
+	@Test
+	public void eightRanks() throws Exception {
+		MPJRunner.run(VectorAllreduceTest.class, 8);
+	}
+
+	/**
+	 * Rank program. Values are small multiples of 1/4, so every partial sum is exact in float and
+	 * double and the result does not depend on the order the algorithm adds in.
+	 */
+	public static void main(String[] args) {
+		MPI.Init(args);
+		int rank = MPI.COMM_WORLD.Rank();
+		int nRanks = MPI.COMM_WORLD.Size();
+		List<String> failures = new ArrayList<String>();
+
+		for(String algorithm : VectorAllreduce.ALGORITHMS){
+			for(int floats = 0; floats < 2; floats++){
+				for(int count : SIZES){
+					VectorAllreduce allreduce = new VectorAllreduce(algorithm, count, floats == 1);
+					String name = algorithm + (floats == 1 ? " float" : " double") + " count " + count;
+					boolean rhd = algorithm.equals("rhd") && Integer.bitCount(nRanks) == 1;
+					String expectedAlgorithm = algorithm.equals("rhd") && !rhd ? "ring" : algorithm;
+					if(!allreduce.algorithm().equals(expectedAlgorithm)){
+						failures.add(name + ": algorithm " + allreduce.algorithm());
+					}
+					double[] values = new double[count];
+					for(int call = 0; call < 2; call++){
+						for(int i = 0; i < count; i++){
+							values[i] = value(i + call, rank);
+						}
+						allreduce.sum(values);
+						for(int i = 0; i < count; i++){
+							double expected = 0;
+							for(int r = 0; r < nRanks; r++){
+								expected += value(i + call, r);
+							}
+							if(values[i] != expected){
+								failures.add(name + " call " + call + ", rank " + rank + ": [" + i + "] = " + values[i]
+										+ ", expected " + expected);
+								break;
+							}
+						}
+					}
+					checkBytes(allreduce, name, count, floats == 1 ? 4 : 8, nRanks, failures);
+				}
+			}
+		}
+		MPJRunner.report(failures);
+		MPI.Finalize();
+	}
+
+	private static double value(int i, int rank) {
+		return ((i * 7 + rank * 3) % 13 - 6) * 0.25;
+	}
+
+	/**
+	 * Summed over the ranks, bytes sent and received must match; the ring sends every element
+	 * 2*(nRanks-1) times per call, whatever the rank count.
+	 */
+	private static void checkBytes(VectorAllreduce allreduce, String name, int count, int typeBytes, int nRanks,
+			List<String> failures) {
+		long[] bytes = {allreduce.bytesSent(), allreduce.bytesReceived()};
+		long[] totals = new long[2];
+		MPI.COMM_WORLD.Allreduce(bytes, 0, totals, 0, 2, MPI.LONG, MPI.SUM);
+		if(totals[0] != totals[1]){
+			failures.add(name + ": sent " + totals[0] + " bytes, received " + totals[1]);
+		}
+		if(allreduce.algorithm().equals("ring") && totals[0] != 2L * 2 * (nRanks - 1) * count * typeBytes){
+			failures.add(name + ": ring sent " + totals[0] + " bytes in 2 calls");
+		}
+	}
+}
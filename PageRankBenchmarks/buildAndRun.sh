@@ -0,0 +1,29 @@
+# JMH benchmarks of the PageRank iteration kernels (see src/PageRank/IterationKernelBenchmark.java).
+# Arguments go to JMH, e.g. "$0 -p urls=100000 -p distribution=rmat" or "$0 csrPull -rf csv -rff results.csv";
+# without arguments all benchmarks run with the gc profiler.
+
+JMH_VERSION=1.37
+MAVEN=https://repo1.maven.org/maven2
+JARS="org/openjdk/jmh/jmh-core/$JMH_VERSION/jmh-core-$JMH_VERSION.jar
+org/openjdk/jmh/jmh-generator-annprocess/$JMH_VERSION/jmh-generator-annprocess-$JMH_VERSION.jar
+net/sf/jopt-simple/jopt-simple/5.0.4/jopt-simple-5.0.4.jar
+org/apache/commons/commons-math3/3.6.1/commons-math3-3.6.1.jar"
+
+cd "$(dirname "$0")"
+mkdir -p lib
+for jar in $JARS; do
+	if [ ! -f lib/$(basename $jar) ]; then
+		echo "Downloading $(basename $jar)"
+		curl -sSf -o lib/$(basename $jar) $MAVEN/$jar || exit 1
+	fi
+done
+
+# the kernels are in package PageRank, so compile them together with ../SequentialPageRank
+rm -rf bin
+# javac expands "lib/*" in -cp but not in -processorpath
+PROCESSOR=lib/jmh-generator-annprocess-$JMH_VERSION.jar:lib/jmh-core-$JMH_VERSION.jar
+javac -cp "lib/*" -processorpath $PROCESSOR -d bin ../SequentialPageRank/src/PageRank/*.java src/PageRank/*.java || exit 1
+if [ $# -eq 0 ]; then
+	set -- -prof gc
+fi
+java -cp "bin:lib/*" org.openjdk.jmh.Main "$@"
@@ -0,0 +1,136 @@
+package PageRank;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of one PageRank iteration over the same graph in four data representations:
+ *
+ *   hashMapBoxed    SequentialPageRank.calculator(), HashMap<Integer, ArrayList<Integer>> and HashMap<Integer, Double>
+ *   primitiveArrays push over one int[] of out-links per URL and double[] ranks, what a direct port of
+ *                   calculator() to primitive types looks like (this kernel lives here, not in SequentialPageRank)
+ *   csrPush         SequentialPageRank.calculatorCSR(), out-links in one CSRGraph
+ *   csrPull         SequentialPageRank.calculatorPull(), in-links of the transposed CSRGraph
+ *
+ * One operation is one iteration, so ops/s is iterations per second. The graphs come from RmatGenerator:
+ * "rmat" is the default skewed R-MAT graph (a few URLs with most in-links), "uniform" has a = b = c = 0.25,
+ * the same number of links spread evenly. Run with -prof gc for the allocation rate per iteration; only
+ * hashMapBoxed should allocate.
+ *
+ * The ranks carry over from one operation to the next, as in a run of many iterations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class IterationKernelBenchmark {
+
+	private static final double DF = 0.85;
+
+	@Param({"10000", "1000000"})
+	public int urls;
+
+	@Param({"16"})
+	public double degree;
+
+	@Param({"rmat", "uniform"})
+	public String distribution;
+
+	private SequentialPageRank sequentialPR;
+	private CSRGraph graph;
+	private CSRGraph inGraph;
+	private HashMap<Integer, ArrayList<Integer>> adjMatrix;
+	private HashMap<Integer, Double> rankValues;
+	private int[][] outLinks;
+	private double[] ranks;
+	private double[] ranks_temp;
+
+	@Setup
+	public void setUp() {
+		RmatGenerator generator = distribution.equals("uniform")
+				? new RmatGenerator(urls, degree, 0.25, 0.25, 0.25, 1)
+				: new RmatGenerator(urls, degree, 0.57, 0.19, 0.19, 1);
+		graph = generator.generate(Runtime.getRuntime().availableProcessors());
+		inGraph = graph.transpose();
+
+		sequentialPR = new SequentialPageRank();
+		sequentialPR.prepareCSR(graph, inGraph);
+
+		adjMatrix = new HashMap<Integer, ArrayList<Integer>>();
+		rankValues = new HashMap<Integer, Double>();
+		outLinks = new int[urls][];
+		for(int u = 0; u < urls; u++){
+			ArrayList<Integer> adjList = new ArrayList<Integer>(graph.outDegree(u));
+			outLinks[u] = new int[graph.outDegree(u)];
+			for(int e = graph.offsets[u]; e < graph.offsets[u+1]; e++){
+				adjList.add(graph.targets[e]);
+				outLinks[u][e - graph.offsets[u]] = graph.targets[e];
+			}
+			adjMatrix.put(u, adjList);
+			rankValues.put(u, 1.0 / urls);
+		}
+		ranks = new double[urls];
+		ranks_temp = new double[urls];
+		Arrays.fill(ranks, 1.0 / urls);
+	}
+
+	@Benchmark
+	public double hashMapBoxed() {
+		return sequentialPR.calculator(rankValues, adjMatrix, DF);
+	}
+
+	@Benchmark
+	public double primitiveArrays() {
+		int totalNumberUniqueURLs = outLinks.length;
+		double danglingValue = 0;
+		Arrays.fill(ranks_temp, 0.0);
+		for(int currentURL = 0; currentURL < totalNumberUniqueURLs; currentURL++){
+			int[] outgoingURLs = outLinks[currentURL];
+			if(outgoingURLs.length == 0){
+				danglingValue += ranks[currentURL];
+			}else{
+				double share = ranks[currentURL] / outgoingURLs.length;
+				for(int targetURL : outgoingURLs){
+					ranks_temp[targetURL] += share;
+				}
+			}
+		}
+		double danglingValue_eachPage = danglingValue / totalNumberUniqueURLs;
+		double teleport = (1-DF) / totalNumberUniqueURLs;
+		double change = 0;
+		for(int i = 0; i < totalNumberUniqueURLs; i++){
+			ranks_temp[i] = teleport + DF*(ranks_temp[i] + danglingValue_eachPage);
+			change += Math.abs(ranks_temp[i] - ranks[i]);
+		}
+		double[] swap = ranks;
+		ranks = ranks_temp;
+		ranks_temp = swap;
+		return change;
+	}
+
+	@Benchmark
+	public double csrPush() {
+		return sequentialPR.calculatorCSR(graph, DF);
+	}
+
+	@Benchmark
+	public double csrPull() {
+		return sequentialPR.calculatorPull(inGraph, DF);
+	}
+}
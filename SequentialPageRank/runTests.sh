@@ -0,0 +1,23 @@
+# JUnit tests of src/PageRank (see test/PageRank). Arguments are test class names, e.g.
+# "$0 PageRank.SequentialPageRankTest"; without arguments every *Test class under test/ runs.
+
+JUNIT_VERSION=4.13.2
+MAVEN=https://repo1.maven.org/maven2
+JARS="junit/junit/$JUNIT_VERSION/junit-$JUNIT_VERSION.jar
+org/hamcrest/hamcrest-core/1.3/hamcrest-core-1.3.jar"
+
+cd "$(dirname "$0")"
+mkdir -p test-lib
+for jar in $JARS; do
+	if [ ! -f test-lib/$(basename $jar) ]; then
+		echo "Downloading $(basename $jar)"
+		curl -sSf -o test-lib/$(basename $jar) $MAVEN/$jar || exit 1
+	fi
+done
+
+rm -rf test-bin
+javac -cp "test-lib/*" -d test-bin src/PageRank/*.java test/PageRank/*.java || exit 1
+if [ $# -eq 0 ]; then
+	set -- $(cd test && ls PageRank/*Test.java | sed 's|/|.|; s|\.java$||')
+fi
+java -cp "test-bin:test-lib/*" org.junit.runner.JUnitCore "$@"
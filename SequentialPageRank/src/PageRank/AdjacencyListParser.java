@@ -0,0 +1,163 @@
+package PageRank;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Byte level parser for the adjacency list input format
+ *
+ *     0 0 1 3 5 9 21
+ *     1 8 19
+ *     2 4 11
+ *
+ * The file is read through a FileChannel into one large buffer and the numbers are decoded straight from the
+ * bytes into the growable int arrays of a CSRGraph.Builder. No Strings or boxed Integers are created per line,
+ * so loading large inputs is limited by I/O instead of the garbage collector.
+ *
+ * Used by SequentialPageRank and by MPIPageRank.
+ */
+public class AdjacencyListParser {
+
+	// bytes read from the channel at a time
+	private static final int BUFFER_SIZE = 4 << 20;
+
+	/**
+	 * Parse a whole adjacency list file.
+	 *
+	 * @param inputFile input file name
+	 * @throws IOException if the file can not be read or is malformed
+	 */
+	public static CSRGraph parse(String inputFile) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(inputFile, "r");
+		try{
+			FileChannel channel = file.getChannel();
+			CSRGraph.Builder builder = new CSRGraph.Builder();
+			parse(channel, 0, channel.size(), builder);
+			try{
+				return builder.build();
+			}catch(IllegalArgumentException ex){
+				throw new IOException(inputFile + ": " + ex.getMessage());
+			}
+		}finally{
+			file.close();
+		}
+	}
+
+	/**
+	 * Parse the lines that start in part "part" of "parts" equal byte ranges of the file.
+	 * Every line belongs to exactly one part, so each MPI rank can read its own rows.
+	 *
+	 * @return number of lines added to the builder
+	 * @throws IOException if the file can not be read or is malformed
+	 */
+	public static int parsePart(String inputFile, int part, int parts, CSRGraph.Builder builder) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(inputFile, "r");
+		try{
+			FileChannel channel = file.getChannel();
+			long fileSize = channel.size();
+			long from = fileSize * part / parts;
+			long to = fileSize * (part + 1) / parts;
+			return parse(channel, from, to, builder);
+		}finally{
+			file.close();
+		}
+	}
+
+	/**
+	 * Parse the lines that start inside the byte range [from, to) of the channel into the builder.
+	 * A line that starts before "from" belongs to the previous range and is skipped; the last line
+	 * is read to its end even if that is past "to". Ranges that cover a file end to end therefore
+	 * parse every line exactly once.
+	 *
+	 * @return number of lines added to the builder
+	 * @throws IOException if the channel can not be read or contains anything but digits and white space
+	 */
+	public static int parse(FileChannel channel, long from, long to, CSRGraph.Builder builder) throws IOException {
+		byte[] bytes = new byte[BUFFER_SIZE];
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		long position = from;
+		long fileSize = channel.size();
+
+		boolean skipping = false;
+		if(from > 0){
+			// a range that does not start right after a newline starts in the middle of a line
+			ByteBuffer previous = ByteBuffer.allocate(1);
+			channel.read(previous, from - 1);
+			skipping = previous.get(0) != '\n';
+		}
+
+		int rows = 0;
+		int value = 0;
+		boolean inNumber = false;
+		boolean firstInLine = true;
+		// position of the first byte of the current line
+		long lineStart = from;
+
+		while(position < fileSize){
+			buffer.clear();
+			int n = channel.read(buffer, position);
+			if(n <= 0){
+				break;
+			}
+			for(int i = 0; i < n; i++){
+				byte b = bytes[i];
+				if(skipping){
+					if(b == '\n'){
+						skipping = false;
+						lineStart = position + i + 1;
+					}
+					continue;
+				}
+				if(b >= '0' && b <= '9'){
+					if(!inNumber){
+						if(firstInLine && lineStart >= to){
+							// this line starts in the next range
+							return rows;
+						}
+						inNumber = true;
+						value = 0;
+					}
+					int digit = b - '0';
+					// checked before the multiply: a wrapped value can come out positive again
+					if(value > (Integer.MAX_VALUE - digit) / 10){
+						throw new IOException("Number too large at byte " + (position + i));
+					}
+					value = value * 10 + digit;
+				}else if(b == ' ' || b == '\t' || b == '\r' || b == '\n'){
+					if(inNumber){
+						if(firstInLine){
+							builder.startRow(value);
+							rows++;
+							firstInLine = false;
+						}else{
+							builder.addEdge(value);
+						}
+						inNumber = false;
+					}
+					if(b == '\n'){
+						firstInLine = true;
+						lineStart = position + i + 1;
+						if(lineStart >= to){
+							return rows;
+						}
+					}
+				}else{
+					throw new IOException("Unexpected character '" + (char)b + "' at byte " + (position + i));
+				}
+			}
+			position += n;
+		}
+		// last line without a trailing newline
+		if(inNumber){
+			if(firstInLine){
+				builder.startRow(value);
+				rows++;
+			}else{
+				builder.addEdge(value);
+			}
+		}
+		return rows;
+	}
+}
@@ -0,0 +1,118 @@
+package PageRank;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Writes RankCheckpoints on a background thread so the iterations do not wait for the disk.
+ *
+ * checkpoint() copies the ranks into a snapshot buffer and returns; the file is written while the next
+ * iterations run. There is one snapshot buffer, so if the previous checkpoint is still being written
+ * checkpoint() waits for it first. The time the caller spent in checkpoint() (copy and wait) and the
+ * time spent writing are reported separately by summary().
+ */
+public class AsyncCheckpointWriter {
+
+	private final String file;
+	// URL of every entry, or null for a full vector
+	private final int[] urls;
+	private final int size;
+	private final double[] snapshot;
+	private final ExecutorService executor;
+	private Future<Long> pending = null;
+
+	private int written = 0;
+	private long blockedNanos = 0;
+	private long writeNanos = 0;
+
+	/**
+	 * @param file checkpoint file name
+	 * @param size number of URLs of the graph
+	 * @param urls the URLs to checkpoint, or null for all URLs 0..size-1
+	 */
+	public AsyncCheckpointWriter(String file, int size, int[] urls) {
+		this.file = file;
+		this.size = size;
+		this.urls = urls;
+		this.snapshot = new double[urls != null ? urls.length : size];
+		this.executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "checkpoint writer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Start writing a checkpoint of ranks (indexed by URL) for the given iteration.
+	 *
+	 * @throws IOException if the previous checkpoint could not be written
+	 */
+	public void checkpoint(final int iteration, final double residual, double[] ranks) throws IOException {
+		long start = System.nanoTime();
+		waitForPending();
+		if(urls == null){
+			System.arraycopy(ranks, 0, snapshot, 0, size);
+		}else{
+			for(int k = 0; k < urls.length; k++){
+				snapshot[k] = ranks[urls[k]];
+			}
+		}
+		pending = executor.submit(new Callable<Long>()
+		{
+			public Long call() throws IOException
+			{
+				long writeStart = System.nanoTime();
+				RankCheckpoint.write(file, iteration, size, residual, urls, snapshot, snapshot.length);
+				return System.nanoTime() - writeStart;
+			}
+		});
+		written++;
+		blockedNanos += System.nanoTime() - start;
+	}
+
+	/**
+	 * Wait for the last checkpoint and stop the writer thread.
+	 *
+	 * @throws IOException if the last checkpoint could not be written
+	 */
+	public void close() throws IOException {
+		try{
+			waitForPending();
+		}finally{
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * @return one line with the number of checkpoints and the time spent on them
+	 */
+	public String summary() {
+		return "Checkpoints : " + written + " written to " + file + ", iterations blocked ms "
+				+ String.format("%.3f", blockedNanos / 1e6) + ", background write ms " + String.format("%.3f", writeNanos / 1e6);
+	}
+
+	private void waitForPending() throws IOException {
+		if(pending == null){
+			return;
+		}
+		try{
+			writeNanos += pending.get();
+		}catch(InterruptedException ex){
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while writing " + file);
+		}catch(ExecutionException ex){
+			throw new IOException("Could not write checkpoint " + file + ": " + ex.getCause().getMessage());
+		}finally{
+			pending = null;
+		}
+	}
+}
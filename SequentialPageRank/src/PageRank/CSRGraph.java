@@ -0,0 +1,168 @@
+package PageRank;
+
+import java.util.Arrays;
+
+/**
+ * Compressed sparse row (CSR) form of the URL adjacency list.
+ *
+ * The outgoing URLs of URL u are stored in targets[offsets[u]] ... targets[offsets[u+1]-1].
+ * URLs are assumed to be numbered 0,1,...,(numNodes-1), the same assumption the
+ * HashMap based calculator makes.
+ *
+ * Compared to HashMap<Integer, ArrayList<Integer>> this needs 4 bytes per edge and
+ * 4 bytes per URL instead of one boxed Integer per edge plus a map entry and a list per URL.
+ */
+public class CSRGraph {
+
+	// number of URLs
+	public final int numNodes;
+	// start of the out-link list of every URL, numNodes+1 entries
+	public final int[] offsets;
+	// concatenated out-link lists
+	public final int[] targets;
+
+	public CSRGraph(int numNodes, int[] offsets, int[] targets) {
+		this.numNodes = numNodes;
+		this.offsets = offsets;
+		this.targets = targets;
+	}
+
+	public int numEdges() {
+		return offsets[numNodes];
+	}
+
+	public int outDegree(int url) {
+		return offsets[url + 1] - offsets[url];
+	}
+
+	/**
+	 * Build the transposed graph: the row of URL v lists the URLs that link to v.
+	 * Sources are emitted in increasing order within every row.
+	 */
+	public CSRGraph transpose() {
+		int[] inOffsets = new int[numNodes + 1];
+		int[] sources = new int[numEdges()];
+
+		for (int e = 0; e < numEdges(); e++) {
+			inOffsets[targets[e] + 1]++;
+		}
+		for (int v = 0; v < numNodes; v++) {
+			inOffsets[v + 1] += inOffsets[v];
+		}
+		int[] next = Arrays.copyOf(inOffsets, numNodes);
+		for (int u = 0; u < numNodes; u++) {
+			for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+				sources[next[targets[e]]++] = u;
+			}
+		}
+		return new CSRGraph(numNodes, inOffsets, sources);
+	}
+
+	/**
+	 * @return 1/outDegree for every URL, 0 for dangling URLs
+	 */
+	public double[] inverseOutDegrees() {
+		double[] inv = new double[numNodes];
+		for (int u = 0; u < numNodes; u++) {
+			int degree = outDegree(u);
+			if (degree != 0) {
+				inv[u] = 1.0 / degree;
+			}
+		}
+		return inv;
+	}
+
+	/**
+	 * Collects rows in file order into growable primitive arrays and orders them by URL on build().
+	 */
+	public static class Builder {
+
+		private int[] rowIds = new int[1024];
+		private int[] rowStarts = new int[1024];
+		private int[] edges = new int[4096];
+		private int rowCount = 0;
+		private int edgeCount = 0;
+
+		public void startRow(int url) {
+			if (rowCount == rowIds.length) {
+				rowIds = Arrays.copyOf(rowIds, rowIds.length * 2);
+				rowStarts = Arrays.copyOf(rowStarts, rowStarts.length * 2);
+			}
+			rowIds[rowCount] = url;
+			rowStarts[rowCount] = edgeCount;
+			rowCount++;
+		}
+
+		public void addEdge(int targetURL) {
+			if (edgeCount == edges.length) {
+				edges = Arrays.copyOf(edges, edges.length * 2);
+			}
+			edges[edgeCount++] = targetURL;
+		}
+
+		/**
+		 * @return the URL of every row, in the order the rows were added
+		 */
+		public int[] rowIds() {
+			return Arrays.copyOf(rowIds, rowCount);
+		}
+
+		/**
+		 * Build a graph whose row i is the i-th row added, without reordering or checking URL ranges.
+		 * Used for the slice of the adjacency matrix held by one MPI rank; rowIds() maps rows back to URLs.
+		 */
+		public CSRGraph buildRows() {
+			int[] offsets = Arrays.copyOf(rowStarts, rowCount + 1);
+			offsets[rowCount] = edgeCount;
+			return new CSRGraph(rowCount, offsets, Arrays.copyOf(edges, edgeCount));
+		}
+
+		/**
+		 * @throws IllegalArgumentException if a URL is out of the range 0..(rows-1) or appears twice
+		 */
+		public CSRGraph build() {
+			int numNodes = rowCount;
+			int[] offsets = new int[numNodes + 1];
+			int[] rowOf = new int[numNodes];
+			Arrays.fill(rowOf, -1);
+
+			boolean inOrder = true;
+			for (int r = 0; r < rowCount; r++) {
+				int url = rowIds[r];
+				if (url < 0 || url >= numNodes) {
+					throw new IllegalArgumentException("URL " + url + " is out of range 0.." + (numNodes - 1));
+				}
+				if (rowOf[url] != -1) {
+					throw new IllegalArgumentException("URL " + url + " has more than one adjacency line");
+				}
+				rowOf[url] = r;
+				inOrder &= (url == r);
+			}
+			for (int e = 0; e < edgeCount; e++) {
+				if (edges[e] < 0 || edges[e] >= numNodes) {
+					throw new IllegalArgumentException("Target URL " + edges[e] + " is out of range 0.." + (numNodes - 1));
+				}
+			}
+
+			if (inOrder) {
+				// common case: the file lists URLs 0,1,2,... so the rows are already in place
+				System.arraycopy(rowStarts, 0, offsets, 0, numNodes);
+				offsets[numNodes] = edgeCount;
+				return new CSRGraph(numNodes, offsets, Arrays.copyOf(edges, edgeCount));
+			}
+
+			int[] targets = new int[edgeCount];
+			int pos = 0;
+			for (int url = 0; url < numNodes; url++) {
+				int r = rowOf[url];
+				int start = rowStarts[r];
+				int end = (r + 1 < rowCount) ? rowStarts[r + 1] : edgeCount;
+				offsets[url] = pos;
+				System.arraycopy(edges, start, targets, pos, end - start);
+				pos += end - start;
+			}
+			offsets[numNodes] = pos;
+			return new CSRGraph(numNodes, offsets, targets);
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package PageRank;
+
+import java.util.Arrays;
+
+/**
+ * Delta PageRank: instead of recomputing every URL each iteration, only rank that has not been
+ * propagated yet (the residual) is pushed, and only from URLs whose residual is above a threshold.
+ *
+ * Every URL starts with rank 0 and residual (1-df)/N. Processing a URL u moves its residual r into
+ * its rank and hands df*r/outDegree(u) to the residual of every out-link. The residual of a dangling
+ * URL is dropped instead of being spread over all URLs, which would wake up the whole graph every round.
+ * With uniform teleport this changes only the scale of the solution: the PageRank vector is the result
+ * divided by its sum, which is what ranks() returns. The sum of the residuals left over bounds the
+ * remaining (unscaled) error, divided by 1-df.
+ *
+ * A round processes the URLs of the current frontier; URLs whose residual crosses the threshold in the
+ * meantime form the next frontier. Once most ranks have settled the frontier holds only a small part of
+ * the graph, so a late round costs a fraction of a full sweep.
+ *
+ * The pushes can also start from given ranks and residuals (see GraphEdits.seed); residuals may then be
+ * negative, and a URL is processed once the absolute value of its residual is above the threshold.
+ */
+public class DeltaPageRank {
+
+	private final CSRGraph graph;
+	private final double df;
+	private final double threshold;
+
+	private final double[] ranks;
+	private final double[] residuals;
+	// URLs to process in this round and the ones queued for the next, and who is queued
+	private int[] frontier;
+	private int[] next;
+	private int frontierSize;
+	private final boolean[] queued;
+	// sum of the absolute values of the residuals
+	private double totalResidual;
+
+	/**
+	 * @param graph - adjacency matrix in CSR form
+	 * @param df - damping factor
+	 * @param threshold - a URL is processed once its residual is above this value
+	 */
+	public DeltaPageRank(CSRGraph graph, double df, double threshold) {
+		this.graph = graph;
+		this.df = df;
+		this.threshold = threshold;
+		int totalNumberUniqueURLs = graph.numNodes;
+		ranks = new double[totalNumberUniqueURLs];
+		residuals = new double[totalNumberUniqueURLs];
+		frontier = new int[totalNumberUniqueURLs];
+		next = new int[totalNumberUniqueURLs];
+		queued = new boolean[totalNumberUniqueURLs];
+
+		Arrays.fill(residuals, (1-df) / totalNumberUniqueURLs);
+		totalResidual = 1 - df;
+		// the first round processes every URL, whatever the threshold
+		for(int u = 0; u < totalNumberUniqueURLs; u++){
+			frontier[u] = u;
+			queued[u] = true;
+		}
+		frontierSize = totalNumberUniqueURLs;
+	}
+
+	/**
+	 * Start from the given ranks and residuals instead (both are used in place). The first round
+	 * processes the URLs whose residual is above the threshold.
+	 */
+	public DeltaPageRank(CSRGraph graph, double df, double threshold, double[] ranks, double[] residuals) {
+		this.graph = graph;
+		this.df = df;
+		this.threshold = threshold;
+		int totalNumberUniqueURLs = graph.numNodes;
+		this.ranks = ranks;
+		this.residuals = residuals;
+		frontier = new int[totalNumberUniqueURLs];
+		next = new int[totalNumberUniqueURLs];
+		queued = new boolean[totalNumberUniqueURLs];
+
+		totalResidual = 0;
+		for(int u = 0; u < totalNumberUniqueURLs; u++){
+			totalResidual += Math.abs(residuals[u]);
+			if(Math.abs(residuals[u]) > threshold){
+				frontier[frontierSize++] = u;
+				queued[u] = true;
+			}
+		}
+	}
+
+	/**
+	 * @return number of URLs the next round will process, 0 once converged
+	 */
+	public int activeCount() {
+		return frontierSize;
+	}
+
+	/**
+	 * @return sum of the residuals not propagated yet
+	 */
+	public double remainingResidual() {
+		return totalResidual;
+	}
+
+	/**
+	 * @return the PageRank values: the pushed ranks scaled to sum to 1
+	 */
+	public double[] ranks() {
+		double sum = 0;
+		for(int u = 0; u < ranks.length; u++){
+			sum += ranks[u];
+		}
+		double[] scaled = new double[ranks.length];
+		for(int u = 0; u < ranks.length; u++){
+			scaled[u] = ranks[u] / sum;
+		}
+		return scaled;
+	}
+
+	/**
+	 * Process the current frontier and build the next one.
+	 *
+	 * @return number of URLs processed
+	 */
+	public int round() {
+		int[] offsets = graph.offsets;
+		int[] targets = graph.targets;
+		int processed = frontierSize;
+		int nextSize = 0;
+
+		for(int k = 0; k < processed; k++){
+			int u = frontier[k];
+			queued[u] = false;
+			double r = residuals[u];
+			residuals[u] = 0;
+			ranks[u] += r;
+			totalResidual -= Math.abs(r);
+
+			int numberOfOutgoingURLs = offsets[u+1] - offsets[u];
+			if(numberOfOutgoingURLs == 0){
+				continue;
+			}
+			double share = df * r / numberOfOutgoingURLs;
+			for(int i = offsets[u]; i < offsets[u+1]; i++){
+				int v = targets[i];
+				double before = residuals[v];
+				residuals[v] = before + share;
+				totalResidual += Math.abs(residuals[v]) - Math.abs(before);
+				if(!queued[v] && Math.abs(residuals[v]) > threshold){
+					queued[v] = true;
+					next[nextSize++] = v;
+				}
+			}
+		}
+
+		int[] swap = frontier;
+		frontier = next;
+		next = swap;
+		frontierSize = nextSize;
+		return processed;
+	}
+}
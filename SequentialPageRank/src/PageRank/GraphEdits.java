@@ -0,0 +1,181 @@
+package PageRank;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.TreeMap;
+
+/**
+ * Link changes between two crawls, read from an edge delta file:
+ *
+ *     + 3 17
+ *     - 5 2
+ *     + 200001 4
+ *
+ * "+ src dst" adds the link src -> dst, "- src dst" removes it. URLs above the largest URL of the graph
+ * are new URLs; the graph grows to the largest URL mentioned. Adding a link that exists or removing one
+ * that does not is ignored.
+ *
+ * Used by SequentialPageRank -mode incremental to update old ranks instead of recomputing them.
+ */
+public class GraphEdits {
+
+	// the edited rows: source URL -> its out-links after the edits, in the old order followed by new links
+	private final TreeMap<Integer, LinkedHashSet<Integer>> rows = new TreeMap<Integer, LinkedHashSet<Integer>>();
+	// every edit in file order: true adds, false removes
+	private final ArrayList<int[]> edits = new ArrayList<int[]>();
+	private final ArrayList<Boolean> additions = new ArrayList<Boolean>();
+	private int maxURL = -1;
+
+	/**
+	 * @throws IOException if the file can not be read or has a malformed line
+	 */
+	public static GraphEdits read(String editsFile) throws IOException {
+		GraphEdits graphEdits = new GraphEdits();
+		BufferedReader in = new BufferedReader(new FileReader(editsFile));
+		try{
+			String line;
+			int lineNumber = 0;
+			while((line = in.readLine()) != null){
+				lineNumber++;
+				line = line.trim();
+				if(line.isEmpty()){
+					continue;
+				}
+				String[] fields = line.split("\\s+");
+				if(fields.length != 3 || !(fields[0].equals("+") || fields[0].equals("-"))){
+					throw new IOException(editsFile + ":" + lineNumber + ": expected \"+ src dst\" or \"- src dst\"");
+				}
+				int source;
+				int target;
+				try{
+					source = Integer.parseInt(fields[1]);
+					target = Integer.parseInt(fields[2]);
+				}catch(NumberFormatException ex){
+					throw new IOException(editsFile + ":" + lineNumber + ": " + ex.getMessage());
+				}
+				if(source < 0 || target < 0){
+					throw new IOException(editsFile + ":" + lineNumber + ": negative URL");
+				}
+				graphEdits.edits.add(new int[]{source, target});
+				graphEdits.additions.add(fields[0].equals("+"));
+				graphEdits.maxURL = Math.max(graphEdits.maxURL, Math.max(source, target));
+			}
+		}finally{
+			in.close();
+		}
+		return graphEdits;
+	}
+
+	public int size() {
+		return edits.size();
+	}
+
+	/**
+	 * @return the graph with the edits applied; the old graph is not changed
+	 */
+	public CSRGraph apply(CSRGraph graph) {
+		rows.clear();
+		for(int k = 0; k < edits.size(); k++){
+			int source = edits.get(k)[0];
+			int target = edits.get(k)[1];
+			LinkedHashSet<Integer> row = rows.get(source);
+			if(row == null){
+				row = new LinkedHashSet<Integer>();
+				if(source < graph.numNodes){
+					for(int e = graph.offsets[source]; e < graph.offsets[source+1]; e++){
+						row.add(graph.targets[e]);
+					}
+				}
+				rows.put(source, row);
+			}
+			if(additions.get(k)){
+				row.add(target);
+			}else{
+				row.remove(target);
+			}
+		}
+
+		int numNodes = Math.max(graph.numNodes, maxURL + 1);
+		int[] offsets = new int[numNodes + 1];
+		for(int u = 0; u < numNodes; u++){
+			LinkedHashSet<Integer> row = rows.get(u);
+			int degree = (row != null) ? row.size() : (u < graph.numNodes ? graph.outDegree(u) : 0);
+			offsets[u + 1] = offsets[u] + degree;
+		}
+		int[] targets = new int[offsets[numNodes]];
+		for(int u = 0; u < numNodes; u++){
+			LinkedHashSet<Integer> row = rows.get(u);
+			if(row != null){
+				int e = offsets[u];
+				for(Integer target : row){
+					targets[e++] = target;
+				}
+			}else if(u < graph.numNodes){
+				System.arraycopy(graph.targets, graph.offsets[u], targets, offsets[u], graph.outDegree(u));
+			}
+		}
+		return new CSRGraph(numNodes, offsets, targets);
+	}
+
+	/**
+	 * Warm start for DeltaPageRank on the edited graph from the converged ranks of the old graph.
+	 *
+	 * DeltaPageRank solves x = (1-df)/N + df * (links of x, dangling rank dropped) and scales x to sum to 1.
+	 * For the old graph the old ranks times
+	 *
+	 *     c = (1-df) * oldN / (newN * (1 - df * (1 - danglingRank)))
+	 *
+	 * solve that equation with newN in place of N, danglingRank being the old rank held by URLs without
+	 * out-links. So starting from x = c * oldRanks only the rows changed by the edits leave residual
+	 * behind: every edited source u moves df*x[u]/outDegree from its old out-links to its new ones, and
+	 * every new URL starts with the teleport share (1-df)/newN. Nothing else has to be visited.
+	 *
+	 * @param oldGraph - graph the old ranks were computed on
+	 * @param newGraph - oldGraph with the edits applied, as returned by apply() (call that first)
+	 * @param oldRanks - converged ranks of oldGraph, summing to 1
+	 * @param ranks - filled with the start ranks, newGraph.numNodes entries
+	 * @param residuals - filled with the start residuals, newGraph.numNodes entries
+	 */
+	public void seed(CSRGraph oldGraph, CSRGraph newGraph, double[] oldRanks, double df, double[] ranks, double[] residuals) {
+		int oldN = oldGraph.numNodes;
+		int newN = newGraph.numNodes;
+		double danglingRank = 0;
+		for(int u = 0; u < oldN; u++){
+			if(oldGraph.outDegree(u) == 0){
+				danglingRank += oldRanks[u];
+			}
+		}
+		double c = (1-df) * oldN / (newN * (1 - df * (1 - danglingRank)));
+
+		Arrays.fill(ranks, 0);
+		Arrays.fill(residuals, 0);
+		for(int u = 0; u < oldN; u++){
+			ranks[u] = c * oldRanks[u];
+		}
+		for(int u = oldN; u < newN; u++){
+			residuals[u] = (1-df) / newN;
+		}
+		for(Integer source : rows.keySet()){
+			int u = source;
+			if(u >= oldN){
+				continue;
+			}
+			if(oldGraph.outDegree(u) > 0){
+				double share = df * ranks[u] / oldGraph.outDegree(u);
+				for(int e = oldGraph.offsets[u]; e < oldGraph.offsets[u+1]; e++){
+					residuals[oldGraph.targets[e]] -= share;
+				}
+			}
+			if(newGraph.outDegree(u) > 0){
+				double share = df * ranks[u] / newGraph.outDegree(u);
+				for(int e = newGraph.offsets[u]; e < newGraph.offsets[u+1]; e++){
+					residuals[newGraph.targets[e]] += share;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,320 @@
+package PageRank;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Binary snapshot of a CSRGraph, so repeated runs on the same crawl do not re-parse the text input.
+ *
+ * Layout (little endian):
+ *
+ *     int   magic "PRG1"
+ *     int   encoding, 0 = plain int arrays, 1 = varint deltas
+ *     int   number of URLs
+ *     long  number of edges
+ *     long  length of the targets section in bytes
+ *     int[] offsets, numNodes+1 entries
+ *     targets section
+ *
+ * Plain snapshots are mapped with a MappedByteBuffer and bulk copied into the int arrays. Varint snapshots
+ * store every out-link list sorted, as the gap to the previous target in 7 bit groups, which usually
+ * shrinks the targets section to 1-2 bytes per edge.
+ *
+ * To convert a text input:
+ *     java PageRank.GraphSnapshot [input file name] [snapshot file name] [plain|varint]
+ */
+public class GraphSnapshot {
+
+	public static final int MAGIC = 0x31475250; // "PRG1" read as a little endian int
+	public static final int PLAIN = 0;
+	public static final int VARINT = 1;
+	private static final int HEADER_SIZE = 4 + 4 + 4 + 8 + 8;
+	// largest byte array the JVM allocates
+	private static final int MAX_ARRAY = Integer.MAX_VALUE - 8;
+
+	/**
+	 * Write the graph to a snapshot file.
+	 *
+	 * @param encoding PLAIN or VARINT
+	 * @throws IOException if an error occurs
+	 */
+	public static void write(CSRGraph graph, String snapshotFile, int encoding) throws IOException {
+		int[] targets = graph.targets;
+		byte[] encodedTargets = null;
+		long targetsLength = 4L * graph.numEdges();
+		if(encoding == VARINT){
+			encodedTargets = encodeVarint(graph);
+			targetsLength = encodedTargets.length;
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(snapshotFile), 1 << 20));
+		try{
+			writeIntLE(out, MAGIC);
+			writeIntLE(out, encoding);
+			writeIntLE(out, graph.numNodes);
+			writeLongLE(out, graph.numEdges());
+			writeLongLE(out, targetsLength);
+			for(int i = 0; i <= graph.numNodes; i++){
+				writeIntLE(out, graph.offsets[i]);
+			}
+			if(encoding == VARINT){
+				out.write(encodedTargets);
+			}else{
+				for(int i = 0; i < targets.length; i++){
+					writeIntLE(out, targets[i]);
+				}
+			}
+		}finally{
+			out.close();
+		}
+	}
+
+	/**
+	 * @return true if the file starts with the snapshot magic number
+	 */
+	public static boolean isSnapshot(String file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try{
+			if(in.length() < HEADER_SIZE){
+				return false;
+			}
+			ByteBuffer header = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			in.getChannel().read(header, 0);
+			return header.getInt(0) == MAGIC;
+		}finally{
+			in.close();
+		}
+	}
+
+	/**
+	 * Map a snapshot file and load it into a CSRGraph.
+	 *
+	 * @throws IOException if the file can not be read or is not a snapshot
+	 */
+	public static CSRGraph read(String snapshotFile) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(snapshotFile, "r");
+		try{
+			FileChannel channel = in.getChannel();
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			if(header.getInt() != MAGIC){
+				throw new IOException(snapshotFile + " is not a graph snapshot");
+			}
+			int encoding = header.getInt();
+			int numNodes = header.getInt();
+			long numEdges = header.getLong();
+			long targetsLength = header.getLong();
+			if(numEdges > Integer.MAX_VALUE){
+				throw new IOException(snapshotFile + ": " + numEdges + " edges do not fit in int offsets");
+			}
+
+			int[] offsets = new int[numNodes + 1];
+			long position = HEADER_SIZE;
+			readInts(channel, position, offsets);
+			position += 4L * offsets.length;
+
+			int[] targets = new int[(int)numEdges];
+			if(encoding == VARINT){
+				decodeVarint(channel, position, targetsLength, 0, offsets, targets);
+			}else if(encoding == PLAIN){
+				readInts(channel, position, targets);
+			}else{
+				throw new IOException(snapshotFile + ": unknown encoding " + encoding);
+			}
+			return new CSRGraph(numNodes, offsets, targets);
+		}finally{
+			in.close();
+		}
+	}
+
+	/**
+	 * Add the rows of part "part" out of "parts" equal ranges of URLs to the builder.
+	 * Only the offsets and targets of those rows are loaded. Varint snapshots have no per row byte
+	 * positions, so the targets section is scanned up to the first row of the part without decoding it.
+	 *
+	 * @return number of rows added to the builder
+	 * @throws IOException if the file can not be read or is not a snapshot
+	 */
+	public static int readPart(String snapshotFile, int part, int parts, CSRGraph.Builder builder) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(snapshotFile, "r");
+		int fromRow;
+		int toRow;
+		int[] offsets;
+		int[] targets;
+		try{
+			FileChannel channel = in.getChannel();
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			if(header.getInt() != MAGIC){
+				throw new IOException(snapshotFile + " is not a graph snapshot");
+			}
+			int encoding = header.getInt();
+			int numNodes = header.getInt();
+			header.getLong();
+			long targetsLength = header.getLong();
+			if(encoding != PLAIN && encoding != VARINT){
+				throw new IOException(snapshotFile + ": unknown encoding " + encoding);
+			}
+			fromRow = (int)((long)numNodes * part / parts);
+			toRow = (int)((long)numNodes * (part + 1) / parts);
+
+			offsets = new int[toRow - fromRow + 1];
+			readInts(channel, HEADER_SIZE + 4L * fromRow, offsets);
+			// make the offsets relative to the slice
+			int first = offsets[0];
+			for(int i = 0; i < offsets.length; i++){
+				offsets[i] -= first;
+			}
+			targets = new int[offsets[offsets.length - 1]];
+			long position = HEADER_SIZE + 4L * (numNodes + 1);
+			if(encoding == VARINT){
+				decodeVarint(channel, position, targetsLength, first, offsets, targets);
+			}else{
+				readInts(channel, position + 4L * first, targets);
+			}
+		}finally{
+			in.close();
+		}
+		for(int r = 0; r < toRow - fromRow; r++){
+			builder.startRow(fromRow + r);
+			for(int e = offsets[r]; e < offsets[r + 1]; e++){
+				builder.addEdge(targets[e]);
+			}
+		}
+		return toRow - fromRow;
+	}
+
+	/**
+	 * Load either format: snapshots are mapped, anything else is parsed as an adjacency list.
+	 */
+	public static CSRGraph load(String file) throws IOException {
+		if(isSnapshot(file)){
+			return read(file);
+		}
+		return AdjacencyListParser.parse(file);
+	}
+
+	/**
+	 * Bulk copy little endian ints from the mapped file, in windows so that files above 2 GB can be mapped.
+	 */
+	private static void readInts(FileChannel channel, long position, int[] values) throws IOException {
+		int window = 1 << 26;
+		for(int done = 0; done < values.length; done += window){
+			int count = Math.min(window, values.length - done);
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position + 4L * done, 4L * count);
+			IntBuffer ints = mapped.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+			ints.get(values, done, count);
+		}
+	}
+
+	private static byte[] encodeVarint(CSRGraph graph) throws IOException {
+		// about 2 bytes per link to start with, in long arithmetic: numEdges()*2 overflows above 1G links
+		ByteBuffer buffer = ByteBuffer.allocate((int)Math.min(MAX_ARRAY, Math.max(16, 2L * graph.numEdges())));
+		int[] row = new int[0];
+		for(int u = 0; u < graph.numNodes; u++){
+			int start = graph.offsets[u];
+			int degree = graph.outDegree(u);
+			if(row.length < degree){
+				row = new int[Math.max(degree, row.length * 2)];
+			}
+			System.arraycopy(graph.targets, start, row, 0, degree);
+			Arrays.sort(row, 0, degree);
+			int previous = 0;
+			for(int i = 0; i < degree; i++){
+				if(buffer.remaining() < 5){
+					if(buffer.capacity() == MAX_ARRAY){
+						throw new IOException("Varint targets section above 2 GB, write a plain snapshot instead");
+					}
+					ByteBuffer larger = ByteBuffer.allocate((int)Math.min(MAX_ARRAY, 2L * buffer.capacity()));
+					buffer.flip();
+					larger.put(buffer);
+					buffer = larger;
+				}
+				int gap = row[i] - previous;
+				previous = row[i];
+				while((gap & ~0x7F) != 0){
+					buffer.put((byte)((gap & 0x7F) | 0x80));
+					gap >>>= 7;
+				}
+				buffer.put((byte)gap);
+			}
+		}
+		byte[] encoded = new byte[buffer.position()];
+		buffer.flip();
+		buffer.get(encoded);
+		return encoded;
+	}
+
+	/**
+	 * Decode the rows described by offsets into targets, after passing over the first "skip" varints
+	 * of the section (the links of the rows before them).
+	 */
+	private static void decodeVarint(FileChannel channel, long position, long length, int skip, int[] offsets, int[] targets) throws IOException {
+		if(length > Integer.MAX_VALUE){
+			throw new IOException("Varint targets section above 2 GB, write a plain snapshot instead");
+		}
+		MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+		// every varint ends with the one byte that has the high bit clear
+		for(int skipped = 0; skipped < skip; ){
+			if(mapped.get() >= 0){
+				skipped++;
+			}
+		}
+		int u = 0;
+		int previous = 0;
+		for(int e = 0; e < targets.length; e++){
+			while(e >= offsets[u + 1]){
+				u++;
+				previous = 0;
+			}
+			int gap = 0;
+			int shift = 0;
+			byte b;
+			do{
+				b = mapped.get();
+				gap |= (b & 0x7F) << shift;
+				shift += 7;
+			}while(b < 0);
+			previous += gap;
+			targets[e] = previous;
+		}
+	}
+
+	private static void writeIntLE(DataOutputStream out, int value) throws IOException {
+		out.writeInt(Integer.reverseBytes(value));
+	}
+
+	private static void writeLongLE(DataOutputStream out, long value) throws IOException {
+		out.writeLong(Long.reverseBytes(value));
+	}
+
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2 || args.length > 3){
+			System.out.println("Usage: java PageRank.GraphSnapshot [input file name] [snapshot file name] [plain|varint]");
+			System.exit(-1);
+		}
+		int encoding = PLAIN;
+		if(args.length == 3){
+			if(args[2].equals("varint")){
+				encoding = VARINT;
+			}else if(!args[2].equals("plain")){
+				System.out.println("Unknown encoding: " + args[2]);
+				System.exit(-1);
+			}
+		}
+		long start = System.currentTimeMillis();
+		CSRGraph graph = AdjacencyListParser.parse(args[0]);
+		write(graph, args[1], encoding);
+		System.out.println("Wrote " + graph.numNodes + " URLs and " + graph.numEdges() + " links to " + args[1]
+				+ " in " + (System.currentTimeMillis() - start) + " ms");
+	}
+}
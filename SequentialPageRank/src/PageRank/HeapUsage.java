@@ -0,0 +1,37 @@
+package PageRank;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Locale;
+
+/**
+ * Peak heap use of the JVM, for the timing lines of SequentialPageRank and MPIPageRank.
+ *
+ * The peak is the sum of the peak use of every heap pool (eden, survivor, old). The pools do not peak
+ * at the same moment, so this is an upper bound on the heap in use at any one time, but it follows the
+ * size of the graph and rank arrays well. In the MPJ multicore device all ranks share one JVM and see
+ * the same value.
+ */
+public class HeapUsage {
+
+	/**
+	 * @return peak bytes used by the heap pools since the JVM started
+	 */
+	public static long peakBytes() {
+		long peak = 0;
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+			if(pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null){
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	/**
+	 * @return peakBytes() in MB, formatted for the timing lines (Locale.ROOT, so scripts can parse it)
+	 */
+	public static String peakMB() {
+		return String.format(Locale.ROOT, "%.1f", peakBytes() / (1024.0 * 1024.0));
+	}
+}
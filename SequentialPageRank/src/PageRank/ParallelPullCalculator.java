@@ -0,0 +1,143 @@
+package PageRank;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Shared-memory parallel version of SequentialPageRank.calculatorPull().
+ *
+ * The URL range is split recursively on a ForkJoinPool. Each leaf task owns a contiguous range of URLs,
+ * so it is the only writer of those entries of the contribution and new rank arrays. The dangling rank and
+ * the L1 residual are summed per leaf and combined while joining, so no shared counters are written.
+ */
+public class ParallelPullCalculator {
+
+	// leaves smaller than this are not split further
+	private static final int MIN_URLS_PER_TASK = 1024;
+
+	private final ForkJoinPool pool;
+	private final CSRGraph inGraph;
+	private final double[] invOutDegree;
+	private final double[] contributions;
+	private final int grain;
+
+	/**
+	 * @param inGraph - transposed adjacency matrix
+	 * @param invOutDegree - 1/outDegree per URL, 0 for dangling URLs
+	 * @param threads - number of worker threads
+	 */
+	public ParallelPullCalculator(CSRGraph inGraph, double[] invOutDegree, int threads) {
+		this.pool = new ForkJoinPool(threads);
+		this.inGraph = inGraph;
+		this.invOutDegree = invOutDegree;
+		this.contributions = new double[inGraph.numNodes];
+		// a few leaves per thread so that URLs with many in-links do not leave threads idle
+		this.grain = Math.max(MIN_URLS_PER_TASK, inGraph.numNodes / (threads * 8));
+	}
+
+	/**
+	 * One iteration: reads ranks, writes ranks_temp.
+	 *
+	 * @return L1 norm of the change of the rank values
+	 */
+	public double calculate(double[] ranks, double[] ranks_temp, double df) {
+		int totalNumberUniqueURLs = inGraph.numNodes;
+
+		double danglingValue = pool.invoke(new ContributionTask(ranks, 0, totalNumberUniqueURLs));
+
+		double danglingValue_eachPage = danglingValue / (double)totalNumberUniqueURLs;
+		double teleport = (1-df)*((1.0)/(double)totalNumberUniqueURLs);
+
+		return pool.invoke(new GatherTask(ranks, ranks_temp, teleport, df, danglingValue_eachPage, 0, totalNumberUniqueURLs));
+	}
+
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Fills contributions[u] = rank[u]/outDegree(u) and returns the rank held by dangling URLs in the range.
+	 */
+	private class ContributionTask extends RecursiveTask<Double> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double[] ranks;
+		private final int from;
+		private final int to;
+
+		ContributionTask(double[] ranks, int from, int to) {
+			this.ranks = ranks;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Double compute() {
+			if (to - from > grain) {
+				int mid = (from + to) >>> 1;
+				ContributionTask left = new ContributionTask(ranks, from, mid);
+				left.fork();
+				double right = new ContributionTask(ranks, mid, to).compute();
+				return left.join() + right;
+			}
+			double danglingValue = 0;
+			for (int u = from; u < to; u++) {
+				contributions[u] = ranks[u] * invOutDegree[u];
+				if (invOutDegree[u] == 0) {
+					danglingValue += ranks[u];
+				}
+			}
+			return danglingValue;
+		}
+	}
+
+	/**
+	 * Computes the new rank of every URL in the range from its in-links and returns the L1 change of the range.
+	 */
+	private class GatherTask extends RecursiveTask<Double> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double[] ranks;
+		private final double[] ranks_temp;
+		private final double teleport;
+		private final double df;
+		private final double danglingValue_eachPage;
+		private final int from;
+		private final int to;
+
+		GatherTask(double[] ranks, double[] ranks_temp, double teleport, double df, double danglingValue_eachPage, int from, int to) {
+			this.ranks = ranks;
+			this.ranks_temp = ranks_temp;
+			this.teleport = teleport;
+			this.df = df;
+			this.danglingValue_eachPage = danglingValue_eachPage;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Double compute() {
+			if (to - from > grain) {
+				int mid = (from + to) >>> 1;
+				GatherTask left = new GatherTask(ranks, ranks_temp, teleport, df, danglingValue_eachPage, from, mid);
+				left.fork();
+				double right = new GatherTask(ranks, ranks_temp, teleport, df, danglingValue_eachPage, mid, to).compute();
+				return left.join() + right;
+			}
+			int[] inOffsets = inGraph.offsets;
+			int[] sources = inGraph.targets;
+			double change = 0;
+			for (int v = from; v < to; v++) {
+				double sum = 0;
+				for (int i = inOffsets[v]; i < inOffsets[v+1]; i++) {
+					sum += contributions[sources[i]];
+				}
+				ranks_temp[v] = teleport + df*(sum + danglingValue_eachPage);
+				change += Math.abs(ranks_temp[v] - ranks[v]);
+			}
+			return change;
+		}
+	}
+}
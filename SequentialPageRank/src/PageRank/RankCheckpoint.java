@@ -0,0 +1,168 @@
+package PageRank;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Binary checkpoint of a rank vector, so a long run can be resumed after a crash.
+ *
+ * Layout (little endian):
+ *
+ *     int      magic "PRC1"
+ *     int      iteration the ranks belong to
+ *     int      number of URLs of the graph
+ *     int      number of ranks in this file (count)
+ *     double   L1 residual of that iteration
+ *     int      1 if the URL of every rank follows, 0 if the ranks are URLs 0..count-1
+ *     int[]    URLs, count entries (only if flagged)
+ *     double[] ranks, count entries
+ *
+ * SequentialPageRank and MPIPageRank with a full rank vector write all URLs; MPIPageRank ranks that
+ * only own part of the URLs write their slice with the URL list, one file per rank.
+ *
+ * A checkpoint is written to a temporary file first and renamed over the old one, so a crash while
+ * writing leaves the previous checkpoint intact.
+ */
+public class RankCheckpoint {
+
+	public static final int MAGIC = 0x31435250; // "PRC1" read as a little endian int
+	private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 8 + 4;
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	public final int iteration;
+	public final int size;
+	public final double residual;
+	// URL of every rank, null if the ranks are URLs 0..values.length-1
+	public final int[] urls;
+	public final double[] values;
+
+	public RankCheckpoint(int iteration, int size, double residual, int[] urls, double[] values) {
+		this.iteration = iteration;
+		this.size = size;
+		this.residual = residual;
+		this.urls = urls;
+		this.values = values;
+	}
+
+	/**
+	 * Write the first count entries of urls/values.
+	 *
+	 * @param urls URL of every rank, or null for URLs 0..count-1
+	 * @throws IOException if an error occurs
+	 */
+	public static void write(String file, int iteration, int size, double residual, int[] urls, double[] values, int count) throws IOException {
+		Path target = Paths.get(file);
+		Path temporary = Paths.get(file + ".tmp");
+		RandomAccessFile out = new RandomAccessFile(temporary.toFile(), "rw");
+		try{
+			out.setLength(0);
+			FileChannel channel = out.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC);
+			buffer.putInt(iteration);
+			buffer.putInt(size);
+			buffer.putInt(count);
+			buffer.putDouble(residual);
+			buffer.putInt(urls != null ? 1 : 0);
+			if(urls != null){
+				for(int i = 0; i < count; i++){
+					if(buffer.remaining() < 4){
+						flush(channel, buffer);
+					}
+					buffer.putInt(urls[i]);
+				}
+			}
+			for(int i = 0; i < count; i++){
+				if(buffer.remaining() < 8){
+					flush(channel, buffer);
+				}
+				buffer.putDouble(values[i]);
+			}
+			flush(channel, buffer);
+			channel.force(false);
+		}finally{
+			out.close();
+		}
+		Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @throws IOException if the file can not be read or is not a checkpoint
+	 */
+	public static RankCheckpoint read(String file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try{
+			FileChannel channel = in.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, header, 0);
+			header.flip();
+			if(header.getInt() != MAGIC){
+				throw new IOException(file + " is not a rank checkpoint");
+			}
+			int iteration = header.getInt();
+			int size = header.getInt();
+			int count = header.getInt();
+			double residual = header.getDouble();
+			boolean hasUrls = header.getInt() != 0;
+			long expected = HEADER_SIZE + (hasUrls ? 4L * count : 0) + 8L * count;
+			if(count < 0 || count > size || channel.size() != expected){
+				throw new IOException(file + ": truncated or corrupt checkpoint");
+			}
+
+			// the sections are read through one BUFFER_SIZE buffer: 8*count overflows an int above 268M ranks
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			long position = HEADER_SIZE;
+			int[] urls = null;
+			if(hasUrls){
+				urls = new int[count];
+				for(int done = 0; done < count; ){
+					int n = Math.min(count - done, BUFFER_SIZE / 4);
+					buffer.clear().limit(4 * n);
+					readFully(channel, buffer, position);
+					buffer.flip();
+					buffer.asIntBuffer().get(urls, done, n);
+					done += n;
+					position += 4L * n;
+				}
+			}
+			double[] values = new double[count];
+			for(int done = 0; done < count; ){
+				int n = Math.min(count - done, BUFFER_SIZE / 8);
+				buffer.clear().limit(8 * n);
+				readFully(channel, buffer, position);
+				buffer.flip();
+				buffer.asDoubleBuffer().get(values, done, n);
+				done += n;
+				position += 8L * n;
+			}
+			return new RankCheckpoint(iteration, size, residual, urls, values);
+		}finally{
+			in.close();
+		}
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining()){
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining()){
+			int n = channel.read(buffer, position);
+			if(n < 0){
+				throw new IOException("Unexpected end of checkpoint");
+			}
+			position += n;
+		}
+	}
+}
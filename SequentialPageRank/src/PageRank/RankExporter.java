@@ -0,0 +1,334 @@
+package PageRank;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Streams (url, rank) pairs to a file, for writing the full rank vector and not just the top URLs.
+ *
+ * Two formats, both with fixed-size records so that the record i starts at headerBytes + i * recordBytes
+ * and MPIPageRank ranks can write their slices of one file in parallel:
+ *
+ *   text    one line per URL: the URL right aligned in 10 characters, a space, the rank padded with
+ *           spaces to 23 characters, and a newline. These are the "url rank" lines read by
+ *           SequentialPageRank -previous.
+ *   binary  (little endian) int magic "PRV1", int number of records, then per record int url, double rank.
+ *
+ * Records are built in one large buffer and written with FileChannel. Double.toString costs about a
+ * microsecond per rank, more than an iteration spends on a URL, so the text format prints ranks from
+ * 1e-11 to 10 itself: 17 correctly rounded significant digits in scientific notation, computed exactly
+ * with long arithmetic (see putDigits). 17 digits always parse back to the same double. Other values
+ * go through a reused StringBuilder.
+ */
+public class RankExporter {
+
+	public static final String[] FORMATS = {"text", "binary"};
+	public static final int MAGIC = 0x31565250; // "PRV1" read as a little endian int
+	private static final int URL_WIDTH = 10;
+	private static final int RANK_WIDTH = 23;
+	private static final int TEXT_RECORD_BYTES = URL_WIDTH + 1 + RANK_WIDTH + 1;
+	private static final int BINARY_HEADER_BYTES = 4 + 4;
+	private static final int BINARY_RECORD_BYTES = 4 + 8;
+	private static final int BUFFER_SIZE = 4 << 20;
+	// putDigits handles ranks 10^MIN_EXPONENT <= rank < 10^(MAX_EXPONENT+1)
+	private static final int MIN_EXPONENT = -11;
+	private static final int MAX_EXPONENT = 0;
+	private static final long[] POW5 = new long[28];
+	private static final long LOW_32 = 0xffffffffL;
+	private static final long MIN_17_DIGITS = 10000000000000000L;
+	private static final long MIN_18_DIGITS = 100000000000000000L;
+
+	static {
+		POW5[0] = 1;
+		for(int i = 1; i < POW5.length; i++){
+			POW5[i] = POW5[i-1] * 5;
+		}
+	}
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final boolean binary;
+	private final ByteBuffer buffer;
+	private final StringBuilder digits = new StringBuilder(32);
+	private long position;
+
+	private RankExporter(String fileName, String format, long position) throws IOException {
+		this.file = new RandomAccessFile(fileName, "rw");
+		this.channel = file.getChannel();
+		this.binary = format.equals("binary");
+		this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		this.position = position;
+	}
+
+	public static boolean isFormat(String format) {
+		for(String f : FORMATS){
+			if(f.equals(format)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public static long headerBytes(String format) {
+		return format.equals("binary") ? BINARY_HEADER_BYTES : 0;
+	}
+
+	public static long recordBytes(String format) {
+		return format.equals("binary") ? BINARY_RECORD_BYTES : TEXT_RECORD_BYTES;
+	}
+
+	/**
+	 * Truncate or create the file, size it for count records and write the header.
+	 */
+	public static void createFile(String fileName, String format, long count) throws IOException {
+		RandomAccessFile out = new RandomAccessFile(fileName, "rw");
+		try{
+			out.setLength(0);
+			out.setLength(headerBytes(format) + count * recordBytes(format));
+			if(format.equals("binary")){
+				ByteBuffer header = ByteBuffer.allocate(BINARY_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+				header.putInt(MAGIC);
+				header.putInt((int)count);
+				header.flip();
+				FileChannel channel = out.getChannel();
+				while(header.hasRemaining()){
+					channel.write(header, BINARY_HEADER_BYTES - header.remaining());
+				}
+			}
+		}finally{
+			out.close();
+		}
+	}
+
+	/**
+	 * @return an exporter writing records first, first+1, ... of a file set up by createFile()
+	 */
+	public static RankExporter open(String fileName, String format, long first) throws IOException {
+		return new RankExporter(fileName, format, headerBytes(format) + first * recordBytes(format));
+	}
+
+	/**
+	 * Write ranks[0..length-1] as the records of URLs 0..length-1 to a new file.
+	 */
+	public static void export(String fileName, String format, double[] ranks) throws IOException {
+		createFile(fileName, format, ranks.length);
+		RankExporter exporter = open(fileName, format, 0);
+		try{
+			for(int url = 0; url < ranks.length; url++){
+				exporter.write(url, ranks[url]);
+			}
+		}finally{
+			exporter.close();
+		}
+	}
+
+	public void write(int url, double rank) throws IOException {
+		if(buffer.remaining() < TEXT_RECORD_BYTES){
+			flush();
+		}
+		if(binary){
+			buffer.putInt(url);
+			buffer.putDouble(rank);
+		}else{
+			putText(url, rank);
+		}
+	}
+
+	/**
+	 * Write out the buffered records and close the file.
+	 */
+	public void close() throws IOException {
+		try{
+			flush();
+		}finally{
+			file.close();
+		}
+	}
+
+	private void putText(int url, double rank) throws IOException {
+		if(url < 0){
+			throw new IOException("negative URL " + url);
+		}
+		// the URL right aligned: digits from the end of the field
+		int start = buffer.position();
+		int end = start + URL_WIDTH;
+		int value = url;
+		do{
+			buffer.put(--end, (byte)('0' + value % 10));
+			value /= 10;
+		}while(value != 0);
+		while(end > start){
+			buffer.put(--end, (byte)' ');
+		}
+		buffer.position(start + URL_WIDTH);
+		buffer.put((byte)' ');
+
+		int length = putDigits(rank);
+		if(length < 0){
+			digits.setLength(0);
+			digits.append(rank);
+			length = digits.length();
+			if(length > RANK_WIDTH){
+				throw new IOException("rank " + rank + " does not fit the text record");
+			}
+			for(int i = 0; i < length; i++){
+				buffer.put((byte)digits.charAt(i));
+			}
+		}
+		for(int i = length; i < RANK_WIDTH; i++){
+			buffer.put((byte)' ');
+		}
+		buffer.put((byte)'\n');
+	}
+
+	/**
+	 * Put |rank| as d.ddddddddddddddddE-x, correctly rounded to 17 significant digits.
+	 *
+	 * rank = m * 2^q exactly, so with E the decimal exponent and k = 16 - E the 17 digits are
+	 * m * 5^k * 2^(q+k) rounded to an integer. For the supported range 5^k fits in a long and
+	 * q+k is between -63 and -33, so the product takes a 128 bit multiply and a shift, and the bits
+	 * shifted out decide the rounding (half to even).
+	 *
+	 * @return characters put, or -1 (nothing put) if rank is outside the supported range
+	 */
+	private int putDigits(double rank) {
+		double magnitude = Math.abs(rank);
+		if(!(magnitude >= 1e-11 && magnitude < 10)){
+			return -1;
+		}
+		long bits = Double.doubleToRawLongBits(magnitude);
+		long m = (bits & 0x000fffffffffffffL) | 0x0010000000000000L;
+		int q = (int)(bits >>> 52) - 1075;
+		int exponent = (int)Math.floor(Math.log10(magnitude));
+
+		long x = 0;
+		for(int attempt = 0; attempt < 3; attempt++){
+			if(exponent < MIN_EXPONENT || exponent > MAX_EXPONENT){
+				return -1;
+			}
+			int k = 16 - exponent;
+			int shift = -(q + k);
+			long b = POW5[k];
+			// 128 bit product m * 5^k in (hi, lo); m < 2^53 and 5^k < 2^63, so no step overflows
+			long p00 = (m & LOW_32) * (b & LOW_32);
+			long p01 = (m & LOW_32) * (b >>> 32);
+			long p10 = (m >>> 32) * (b & LOW_32);
+			long p11 = (m >>> 32) * (b >>> 32);
+			long middle = (p00 >>> 32) + (p01 & LOW_32) + (p10 & LOW_32);
+			long lo = (middle << 32) | (p00 & LOW_32);
+			long hi = p11 + (p01 >>> 32) + (p10 >>> 32) + (middle >>> 32);
+
+			x = (hi << (64 - shift)) | (lo >>> shift);
+			if(x < MIN_17_DIGITS){
+				// log10 rounded up across a power of ten
+				exponent--;
+				continue;
+			}
+			if(x >= MIN_18_DIGITS){
+				exponent++;
+				continue;
+			}
+			long rest = lo & ((1L << shift) - 1);
+			long half = 1L << (shift - 1);
+			if(rest > half || (rest == half && (x & 1) != 0)){
+				x++;
+				if(x == MIN_18_DIGITS){
+					x = MIN_17_DIGITS;
+					exponent++;
+				}
+			}
+			break;
+		}
+		if(x < MIN_17_DIGITS || x >= MIN_18_DIGITS){
+			return -1;
+		}
+
+		int start = buffer.position();
+		if(rank < 0){
+			buffer.put((byte)'-');
+		}
+		// digits from the back: 16 fraction digits, the point, the leading digit
+		int end = buffer.position() + 18;
+		for(int i = 0; i < 16; i++){
+			buffer.put(--end, (byte)('0' + x % 10));
+			x /= 10;
+		}
+		buffer.put(--end, (byte)'.');
+		buffer.put(--end, (byte)('0' + x));
+		buffer.position(end + 18);
+		buffer.put((byte)'E');
+		if(exponent < 0){
+			buffer.put((byte)'-');
+		}
+		int e = Math.abs(exponent);
+		if(e >= 10){
+			buffer.put((byte)('0' + e / 10));
+		}
+		buffer.put((byte)('0' + e % 10));
+		return buffer.position() - start;
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining()){
+			position += channel.write(buffer, position);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Read a binary export back into a vector indexed by URL.
+	 *
+	 * @throws IOException if the file is not a binary export or does not hold exactly numNodes URLs
+	 */
+	public static double[] readBinary(String fileName, int numNodes) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(fileName, "r");
+		try{
+			FileChannel channel = in.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.limit(BINARY_HEADER_BYTES);
+			long position = 0;
+			while(buffer.hasRemaining()){
+				int n = channel.read(buffer, position);
+				if(n < 0){
+					throw new IOException(fileName + " is not a binary rank export");
+				}
+				position += n;
+			}
+			buffer.flip();
+			int count = buffer.getInt(4);
+			if(buffer.getInt(0) != MAGIC || count != numNodes
+					|| channel.size() != BINARY_HEADER_BYTES + (long)count * BINARY_RECORD_BYTES){
+				throw new IOException(fileName + " is not a binary rank export of " + numNodes + " URLs");
+			}
+
+			double[] values = new double[numNodes];
+			boolean[] seen = new boolean[numNodes];
+			buffer.clear();
+			int records = 0;
+			while(records < count){
+				buffer.limit(Math.min(BUFFER_SIZE / BINARY_RECORD_BYTES, count - records) * BINARY_RECORD_BYTES);
+				while(buffer.hasRemaining()){
+					position += channel.read(buffer, position);
+				}
+				buffer.flip();
+				while(buffer.hasRemaining()){
+					int url = buffer.getInt();
+					if(url < 0 || url >= numNodes || seen[url]){
+						throw new IOException(fileName + ": bad or repeated URL " + url);
+					}
+					seen[url] = true;
+					values[url] = buffer.getDouble();
+					records++;
+				}
+				buffer.clear();
+			}
+			return values;
+		}finally{
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,369 @@
+package PageRank;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates R-MAT (recursive matrix, a Kronecker graph) inputs with a power-law degree distribution,
+ * as test graphs much larger than pagerank.input.1000.urls.19.
+ *
+ * Every link picks one quadrant of the adjacency matrix with probabilities a, b, c and d = 1-a-b-c,
+ * then a quadrant of that quadrant, and so on down to a single cell, so the skew of a/d sets how
+ * concentrated the links are on a few URLs (a = 0.57, b = c = 0.19 is the Graph500 setting; a = b =
+ * c = 0.25 is a uniform random graph). Cells outside the URL count are drawn again, so any URL count
+ * works. The URLs are then shuffled, otherwise the most linked URLs would all have small numbers, and
+ * self links and repeated links are dropped, so the average degree ends up a little below the one asked for.
+ *
+ * The links are drawn in a fixed number of blocks, each with its own random sequence seeded from the seed
+ * and the block number, and the blocks and the row sorting run on a thread pool. The graph depends only on the
+ * parameters and the seed, not on the number of threads.
+ *
+ * Usage : java PageRank.RmatGenerator [output file] [URL count] [average degree] [options]
+ *
+ *   -a, -b, -c p     quadrant probabilities (default 0.57, 0.19, 0.19)
+ *   -seed n          default 1
+ *   -threads n       default: available processors
+ *   -format f        text (the adjacency list input format, default), plain or varint (GraphSnapshot)
+ */
+public class RmatGenerator {
+
+	public static final String[] FORMATS = {"text", "plain", "varint"};
+	private static final int BLOCKS = 256;
+
+	private final int numNodes;
+	private final long numLinks;
+	private final double a;
+	private final double b;
+	private final double c;
+	private final long seed;
+
+	/**
+	 * @param numNodes - number of URLs
+	 * @param averageDegree - links drawn per URL, before self links and repeats are dropped
+	 * @param a - probability of the top left quadrant (links among the low URLs)
+	 * @param b - probability of the top right quadrant
+	 * @param c - probability of the bottom left quadrant; the bottom right one gets 1-a-b-c
+	 * @param seed - random seed
+	 */
+	public RmatGenerator(int numNodes, double averageDegree, double a, double b, double c, long seed) {
+		if(numNodes < 1){
+			throw new IllegalArgumentException("URL count must be at least 1");
+		}
+		if(a < 0 || b < 0 || c < 0 || a + b + c > 1){
+			throw new IllegalArgumentException("quadrant probabilities must be >= 0 and sum to at most 1");
+		}
+		this.numLinks = Math.round(numNodes * averageDegree);
+		if(numLinks < 0 || numLinks > Integer.MAX_VALUE - 8){
+			throw new IllegalArgumentException("URL count x average degree must fit in an int array");
+		}
+		this.numNodes = numNodes;
+		this.a = a;
+		this.b = b;
+		this.c = c;
+		this.seed = seed;
+	}
+
+	public static boolean isFormat(String format) {
+		return Arrays.asList(FORMATS).contains(format);
+	}
+
+	/**
+	 * Draw the links on a pool of the given number of threads and build the graph.
+	 */
+	public CSRGraph generate(int threads) {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try{
+			final int links = (int)numLinks;
+			final int[] sources = new int[links];
+			final int[] targets = new int[links];
+			final int[] shuffle = shuffle();
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			for(int block = 0; block < BLOCKS; block++){
+				final int from = (int)((long)links * block / BLOCKS);
+				final int to = (int)((long)links * (block + 1) / BLOCKS);
+				final long blockSeed = seed * 0x9E3779B97F4A7C15L + block;
+				tasks.add(new Callable<Void>()
+				{
+					public Void call()
+					{
+						drawLinks(blockSeed, sources, targets, from, to, shuffle);
+						return null;
+					}
+				});
+			}
+			runAll(pool, tasks);
+
+			// bucket the links by source, then sort and deduplicate every row in parallel
+			int[] offsets = new int[numNodes + 1];
+			for(int e = 0; e < links; e++){
+				offsets[sources[e] + 1]++;
+			}
+			for(int u = 0; u < numNodes; u++){
+				offsets[u+1] += offsets[u];
+			}
+			final int[] rows = new int[links];
+			int[] fill = Arrays.copyOf(offsets, numNodes);
+			for(int e = 0; e < links; e++){
+				rows[fill[sources[e]]++] = targets[e];
+			}
+			final int[] rowOffsets = offsets;
+			final int[] degrees = new int[numNodes];
+			tasks.clear();
+			for(int block = 0; block < BLOCKS; block++){
+				final int from = (int)((long)numNodes * block / BLOCKS);
+				final int to = (int)((long)numNodes * (block + 1) / BLOCKS);
+				tasks.add(new Callable<Void>()
+				{
+					public Void call()
+					{
+						compactRows(rows, rowOffsets, degrees, from, to);
+						return null;
+					}
+				});
+			}
+			runAll(pool, tasks);
+
+			final int[] graphOffsets = new int[numNodes + 1];
+			for(int u = 0; u < numNodes; u++){
+				graphOffsets[u+1] = graphOffsets[u] + degrees[u];
+			}
+			final int[] graphTargets = new int[graphOffsets[numNodes]];
+			tasks.clear();
+			for(int block = 0; block < BLOCKS; block++){
+				final int from = (int)((long)numNodes * block / BLOCKS);
+				final int to = (int)((long)numNodes * (block + 1) / BLOCKS);
+				tasks.add(new Callable<Void>()
+				{
+					public Void call()
+					{
+						for(int u = from; u < to; u++){
+							System.arraycopy(rows, rowOffsets[u], graphTargets, graphOffsets[u], degrees[u]);
+						}
+						return null;
+					}
+				});
+			}
+			runAll(pool, tasks);
+			return new CSRGraph(numNodes, graphOffsets, graphTargets);
+		}finally{
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * @return number of links drawn, before self links and repeats are dropped
+	 */
+	public long linksDrawn() {
+		return numLinks;
+	}
+
+	/**
+	 * @return a random permutation of the URLs, new number of every R-MAT cell
+	 */
+	private int[] shuffle() {
+		Random random = new Random(seed);
+		int[] permutation = new int[numNodes];
+		for(int u = 0; u < numNodes; u++){
+			permutation[u] = u;
+		}
+		for(int u = numNodes - 1; u > 0; u--){
+			int v = random.nextInt(u + 1);
+			int swap = permutation[u];
+			permutation[u] = permutation[v];
+			permutation[v] = swap;
+		}
+		return permutation;
+	}
+
+	/**
+	 * Draw links from..to-1. The random numbers come from SplitMix64, inlined; one 64 bit value gives
+	 * the quadrants of two levels (32 bits each), which made generate() more than twice as fast as
+	 * one java.util.Random.nextDouble() per level.
+	 */
+	private void drawLinks(long blockSeed, int[] sources, int[] targets, int from, int to, int[] shuffle) {
+		int levels = 32 - Integer.numberOfLeadingZeros(numNodes - 1);
+		// quadrant thresholds on 32 bit unsigned values
+		long limitA = (long)(a * 4294967296.0);
+		long limitAB = (long)((a + b) * 4294967296.0);
+		long limitABC = (long)((a + b + c) * 4294967296.0);
+		long state = blockSeed;
+		for(int e = from; e < to; e++){
+			int u;
+			int v;
+			do{
+				u = 0;
+				v = 0;
+				long bits = 0;
+				for(int level = 0; level < levels; level++){
+					if((level & 1) == 0){
+						state += 0x9E3779B97F4A7C15L;
+						bits = state;
+						bits = (bits ^ (bits >>> 30)) * 0xBF58476D1CE4E5B9L;
+						bits = (bits ^ (bits >>> 27)) * 0x94D049BB133111EBL;
+						bits = bits ^ (bits >>> 31);
+					}else{
+						bits >>>= 32;
+					}
+					long p = bits & 0xffffffffL;
+					u <<= 1;
+					v <<= 1;
+					if(p < limitA){
+						// top left
+					}else if(p < limitAB){
+						v |= 1;
+					}else if(p < limitABC){
+						u |= 1;
+					}else{
+						u |= 1;
+						v |= 1;
+					}
+				}
+			}while(u >= numNodes || v >= numNodes);
+			sources[e] = shuffle[u];
+			targets[e] = shuffle[v];
+		}
+	}
+
+	// sort the rows from..to-1 and keep every target once, without self links, at the start of the row
+	private static void compactRows(int[] rows, int[] offsets, int[] degrees, int from, int to) {
+		for(int u = from; u < to; u++){
+			int start = offsets[u];
+			int end = offsets[u+1];
+			Arrays.sort(rows, start, end);
+			int kept = start;
+			for(int e = start; e < end; e++){
+				int v = rows[e];
+				if(v != u && (kept == start || rows[kept-1] != v)){
+					rows[kept++] = v;
+				}
+			}
+			degrees[u] = kept - start;
+		}
+	}
+
+	private static void runAll(ExecutorService pool, List<Callable<Void>> tasks) {
+		try{
+			for(Future<Void> done : pool.invokeAll(tasks)){
+				done.get();
+			}
+		}catch(InterruptedException ex){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while generating the graph");
+		}catch(ExecutionException ex){
+			throw new IllegalStateException("graph generation failed", ex.getCause());
+		}
+	}
+
+	/**
+	 * Write the graph as the adjacency list text input: "url target target ..." on one line per URL.
+	 */
+	public static void writeText(CSRGraph graph, String fileName) throws IOException {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(fileName), 1 << 20);
+		try{
+			byte[] line = new byte[64];
+			for(int u = 0; u < graph.numNodes; u++){
+				int length = putInt(line, 0, u);
+				for(int e = graph.offsets[u]; e < graph.offsets[u+1]; e++){
+					if(length + 12 > line.length){
+						out.write(line, 0, length);
+						length = 0;
+					}
+					line[length++] = ' ';
+					length = putInt(line, length, graph.targets[e]);
+				}
+				line[length++] = '\n';
+				out.write(line, 0, length);
+			}
+		}finally{
+			out.close();
+		}
+	}
+
+	// decimal digits of a non-negative value at line[position...], returns the position after them
+	private static int putInt(byte[] line, int position, int value) {
+		int end = position;
+		int rest = value;
+		do{
+			end++;
+			rest /= 10;
+		}while(rest != 0);
+		int next = end;
+		rest = value;
+		do{
+			line[--next] = (byte)('0' + rest % 10);
+			rest /= 10;
+		}while(rest != 0);
+		return end;
+	}
+
+	/**
+	 * Write the graph in one of FORMATS.
+	 */
+	public static void write(CSRGraph graph, String fileName, String format) throws IOException {
+		if(format.equals("text")){
+			writeText(graph, fileName);
+		}else{
+			GraphSnapshot.write(graph, fileName, format.equals("varint") ? GraphSnapshot.VARINT : GraphSnapshot.PLAIN);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if(args.length < 3 || args.length % 2 == 0){
+			System.out.println("Usage: java PageRank.RmatGenerator [output file] [URL count] [average degree]"
+					+ " [-a p] [-b p] [-c p] [-seed n] [-threads n] [-format text|plain|varint]");
+			System.exit(-1);
+		}
+		String outputFile = args[0];
+		int numNodes = Integer.parseInt(args[1]);
+		double averageDegree = Double.parseDouble(args[2]);
+		double a = 0.57, b = 0.19, c = 0.19;
+		long seed = 1;
+		int threads = Runtime.getRuntime().availableProcessors();
+		String format = "text";
+		for(int i = 3; i < args.length; i += 2){
+			String name = args[i];
+			String value = args[i+1];
+			if(name.equals("-a")){
+				a = Double.parseDouble(value);
+			}else if(name.equals("-b")){
+				b = Double.parseDouble(value);
+			}else if(name.equals("-c")){
+				c = Double.parseDouble(value);
+			}else if(name.equals("-seed")){
+				seed = Long.parseLong(value);
+			}else if(name.equals("-threads")){
+				threads = Math.max(1, Integer.parseInt(value));
+			}else if(name.equals("-format")){
+				if(!isFormat(value)){
+					System.out.println("Unknown format: " + value);
+					System.exit(-1);
+				}
+				format = value;
+			}else{
+				System.out.println("Unknown option: " + name);
+				System.exit(-1);
+			}
+		}
+
+		long start = System.currentTimeMillis();
+		RmatGenerator generator = new RmatGenerator(numNodes, averageDegree, a, b, c, seed);
+		CSRGraph graph = generator.generate(threads);
+		long generated = System.currentTimeMillis();
+		write(graph, outputFile, format);
+		System.out.println("Generated " + graph.numNodes + " URLs and " + graph.numEdges() + " links ("
+				+ (generator.linksDrawn() - graph.numEdges()) + " self links and repeats dropped) in "
+				+ (generated - start) + " ms, wrote " + outputFile + " (" + format + ") in "
+				+ (System.currentTimeMillis() - generated) + " ms");
+	}
+}
@@ -4,17 +4,18 @@ package PageRank;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Locale;
 import java.util.Map.Entry;
 import java.util.Set;
 
@@ -33,19 +34,69 @@ public class SequentialPageRank {
 	// number of URLs
 	private int size = 0;
 
-	// calculating rank values
+	// calculating rank values of the hashmap engine
 	private HashMap<Integer, Double> rankValues = new HashMap<Integer, Double>();
 
 	// temporary rank Values tables
 	private HashMap<Integer,Double> rankValues_temp =  new HashMap<Integer,Double>();;
+
+	// calculation engine: "csr" (primitive arrays) or "hashmap" (reference implementation)
+	private String engine = "csr";
+	// adjacency matrix in compressed sparse row form, used by the csr engine
+	private CSRGraph graph = null;
+	// rank values of the csr engine, indexed by URL
+	private double[] ranks = null;
+	// temporary rank values of the csr engine
+	private double[] ranks_temp = null;
+	// iteration mode of the csr engine: "push" scatters along out-links, "pull" gathers over in-links,
+	// "delta" only pushes the rank that changed (see DeltaPageRank), "incremental" updates previous ranks
+	// after link edits (see GraphEdits), "gauss-seidel" pulls in place (see GaussSeidelSolver)
+	private String mode = "push";
+	// gauss-seidel mode: order of the sweep, one of GaussSeidelSolver.ORDERS
+	private String order = "natural";
+	// renumbering of the URLs applied after loading (see VertexOrdering), and the ordering used
+	private String relabel = "none";
+	private VertexOrdering ordering = null;
+	// incremental mode: ranks of the input graph ("url rank" lines) and the link edits to apply
+	private String previousFile = null;
+	private String editsFile = null;
+	// number of URLs written to the output file
+	private int top = 10;
+	// write every URL's rank to this file, null for none
+	private String saveFile = null;
+	// RankExporter format of saveFile: "text" ("url rank" lines) or "binary"
+	private String saveFormat = "text";
+	// checkpoint file of the csr push/pull iterations (see RankCheckpoint), null for none
+	private String checkpointFile = null;
+	// write a checkpoint every this many iterations
+	private int checkpointEvery = 10;
+	// start from the checkpoint instead of uniform ranks
+	private boolean resume = false;
+	// delta mode: a URL is processed once its unpropagated rank is above this value
+	private double threshold = 1e-10;
+	// transposed adjacency matrix (in-links), built by loadInput() in pull mode
+	private CSRGraph inGraph = null;
+	// 1/outDegree per URL, 0 for dangling URLs, used in pull mode
+	private double[] invOutDegree = null;
+	// rank[u]/outDegree(u) per URL, filled at the start of every pull iteration
+	private double[] contributions = null;
+	// stop once the L1 norm of the rank change drops below this value, 0 runs all iterations
+	private double tolerance = 0;
+	// number of iterations actually run
+	private int iterationsDone = 0;
+	// L1 norm of the rank change in the last iteration
+	private double residual = Double.NaN;
+	// number of worker threads of the pull mode, 1 runs calculatorPull() on the main thread
+	private int threads = 1;
+
 	/**
 	 * Parse the command line arguments and update the instance variables. Command line arguments are of the form
-	 * <input_file_name> <output_file_name> <num_iters> <damp_factor>
+	 * <input_file_name> <output_file_name> <num_iters> <damp_factor> [-engine csr|hashmap]
 	 *
 	 * @param args arguments
 	 */
 	public void parseArgs(String[] args) {
-		if(args.length != 4){
+		if(args.length < 4 || args.length % 2 != 0){
 			printUsage();
 			System.exit(-1);
 		}else{
@@ -54,15 +105,128 @@ public class SequentialPageRank {
 				outputFile= args[1];
 				if(!args[2].isEmpty())	iterations = Integer.parseInt(args[2]);
 				if(!args[3].isEmpty())	df = Double.parseDouble(args[3]);
+				for(int i = 4; i < args.length; i += 2){
+					parseOption(args[i], args[i+1]);
+				}
+				if(!mode.equals("push") && !engine.equals("csr")){
+					throw new IllegalArgumentException("-mode " + mode + " requires -engine csr");
+				}
+				if(threads > 1 && !mode.equals("pull")){
+					throw new IllegalArgumentException("-threads requires -mode pull");
+				}
+				if(checkpointFile != null && (!engine.equals("csr")
+						|| !(mode.equals("push") || mode.equals("pull") || mode.equals("gauss-seidel")))){
+					throw new IllegalArgumentException("-checkpoint requires -engine csr and -mode push, pull or gauss-seidel");
+				}
+				if(!relabel.equals("none") && (!engine.equals("csr") || mode.equals("incremental"))){
+					throw new IllegalArgumentException("-relabel requires -engine csr and does not work with -mode incremental");
+				}
+				if(!order.equals("natural") && !mode.equals("gauss-seidel")){
+					throw new IllegalArgumentException("-order requires -mode gauss-seidel");
+				}
+				if(resume && checkpointFile == null){
+					throw new IllegalArgumentException("-resume needs -checkpoint");
+				}
+				if(mode.equals("incremental") != (previousFile != null && editsFile != null)){
+					throw new IllegalArgumentException("-mode incremental needs -previous and -edits, and they need -mode incremental");
+				}
+			}catch(IllegalArgumentException e){
+				System.err.println(e.getMessage());
+				printUsage();
+				System.exit(-1);
 			}catch(Exception e){
 				e.printStackTrace();
 			}
 		}
 	}
 
+	/**
+	 * Apply one optional "-name value" argument.
+	 */
+	private void parseOption(String name, String value){
+		if(name.equals("-engine")){
+			if(!value.equals("csr") && !value.equals("hashmap")){
+				throw new IllegalArgumentException("Unknown engine: " + value);
+			}
+			engine = value;
+		}else if(name.equals("-mode")){
+			if(!value.equals("push") && !value.equals("pull") && !value.equals("delta") && !value.equals("incremental")
+					&& !value.equals("gauss-seidel")){
+				throw new IllegalArgumentException("Unknown mode: " + value);
+			}
+			mode = value;
+		}else if(name.equals("-relabel")){
+			if(!VertexOrdering.isOrder(value)){
+				throw new IllegalArgumentException("Unknown relabel order: " + value);
+			}
+			relabel = value;
+		}else if(name.equals("-order")){
+			if(!GaussSeidelSolver.isOrder(value)){
+				throw new IllegalArgumentException("Unknown order: " + value);
+			}
+			order = value;
+		}else if(name.equals("-threads")){
+			threads = Integer.parseInt(value);
+			if(threads < 1){
+				throw new IllegalArgumentException("-threads must be at least 1");
+			}
+		}else if(name.equals("-tolerance")){
+			tolerance = Double.parseDouble(value);
+		}else if(name.equals("-threshold")){
+			threshold = Double.parseDouble(value);
+		}else if(name.equals("-previous")){
+			previousFile = value;
+		}else if(name.equals("-edits")){
+			editsFile = value;
+		}else if(name.equals("-top")){
+			top = Integer.parseInt(value);
+			if(top < 1){
+				throw new IllegalArgumentException("-top must be at least 1");
+			}
+		}else if(name.equals("-save")){
+			saveFile = value;
+		}else if(name.equals("-saveFormat")){
+			if(!RankExporter.isFormat(value)){
+				throw new IllegalArgumentException("Unknown save format: " + value);
+			}
+			saveFormat = value;
+		}else if(name.equals("-checkpoint")){
+			checkpointFile = value;
+		}else if(name.equals("-checkpointEvery")){
+			checkpointEvery = Integer.parseInt(value);
+			if(checkpointEvery < 1){
+				throw new IllegalArgumentException("-checkpointEvery must be at least 1");
+			}
+		}else if(name.equals("-resume")){
+			if(!value.equals("true") && !value.equals("false")){
+				throw new IllegalArgumentException("-resume takes true or false");
+			}
+			resume = value.equals("true");
+		}else{
+			throw new IllegalArgumentException("Unknown option: " + name);
+		}
+	}
+
 	public void printUsage(){
 		String usage = "Usage: Java SequentialPageRank [input file name] "
-				+ "[output file name] [iteration count] [damping factor]";
+				+ "[output file name] [iteration count] [damping factor]\n"
+				+ "Options:\n"
+				+ "  -engine csr|hashmap    rank calculation engine (default csr)\n"
+				+ "  -mode push|pull|delta|incremental|gauss-seidel  scatter along out-links, gather over in-links, only push\n"
+				+ "                         changed rank, update -previous ranks after -edits, or gather in place (default push)\n"
+				+ "  -order natural|indegree|outdegree  gauss-seidel mode: order of the sweep (default natural)\n"
+				+ "  -relabel none|indegree|bfs  renumber the URLs for locality before computing (default none)\n"
+				+ "  -tolerance eps         stop early once the L1 norm of the rank change is below eps (default 0, off)\n"
+				+ "  -threads n             worker threads of the pull mode (default 1)\n"
+				+ "  -threshold eps         delta and incremental modes: push a URL's rank change once it is above eps (default 1e-10)\n"
+				+ "  -previous file         incremental mode: ranks of the input graph, as written by -save\n"
+				+ "  -edits file           incremental mode: \"+ src dst\" and \"- src dst\" lines to apply to the input graph\n"
+				+ "  -top K                 number of highest ranked URLs written to the output file (default 10)\n"
+				+ "  -save file             also write the rank of every URL to file\n"
+				+ "  -saveFormat text|binary  fixed width \"url rank\" lines or (int url, double rank) records (default text)\n"
+				+ "  -checkpoint file       write the ranks to a binary checkpoint in the background (push, pull, gauss-seidel)\n"
+				+ "  -checkpointEvery k     iterations between checkpoints (default 10)\n"
+				+ "  -resume true|false     continue from the -checkpoint file instead of starting over (default false)";
 		System.out.println(usage);
 	}
 
@@ -89,6 +253,25 @@ public class SequentialPageRank {
 	 * @throws java.io.IOException if an error occurs
 	 */
 	public void loadInput() throws IOException {
+		if(engine.equals("csr")){
+			// binary snapshots are memory mapped, text input goes through the byte level parser
+			graph = GraphSnapshot.load(inputFile);
+			if(!relabel.equals("none")){
+				long start = System.nanoTime();
+				double spanBefore = VertexOrdering.averageLinkSpan(graph);
+				ordering = VertexOrdering.compute(graph, relabel);
+				graph = ordering.relabel(graph);
+				System.out.println("Relabel " + relabel + " : average link span " + String.format(Locale.ROOT, "%.0f", spanBefore)
+						+ " -> " + String.format(Locale.ROOT, "%.0f", VertexOrdering.averageLinkSpan(graph))
+						+ ", ms " + String.format(Locale.ROOT, "%.3f", (System.nanoTime() - start) / 1e6));
+			}
+			if(mode.equals("pull") || mode.equals("gauss-seidel")){
+				inGraph = graph.transpose();
+				invOutDegree = graph.inverseOutDegrees();
+			}
+			return;
+		}
+
 		BufferedReader in=null;
 		try{
 			in = new BufferedReader(new FileReader(inputFile));
@@ -127,10 +310,24 @@ public class SequentialPageRank {
 	/**
 	 * Do fixed number of iterations and calculate the page rank values. You may keep the
 	 * intermediate page rank values in a hash table.
+	 * If a tolerance is set, stop as soon as the L1 norm of the rank change falls below it.
 	 * @throws IOException 
 	 */
 	public void calculatePageRank() throws IOException {
 
+		if(mode.equals("delta")){
+			calculatePageRankDelta();
+			return;
+		}
+		if(mode.equals("incremental")){
+			calculatePageRankIncremental();
+			return;
+		}
+		if(engine.equals("csr")){
+			calculatePageRankCSR();
+			return;
+		}
+
 		// initial pageRank assignment 
 
 		double initialPageRank = 1.0 / (double)adjMatrix.size();
@@ -139,49 +336,55 @@ public class SequentialPageRank {
 		}
 
 		// Call pageRank Calculator function for the given number of iterations.
-		for(int count_of_loop = 0; count_of_loop < iterations; count_of_loop++)
+		for(int count_of_loop = 0; count_of_loop < iterations && !converged(); count_of_loop++)
 		{
-			calculator(rankValues,adjMatrix,df);
+			residual = calculator(rankValues,adjMatrix,df);
+			iterationsDone++;
 		}
 	}
 
+	/**
+	 * @return true once the last iteration changed the ranks by less than the tolerance
+	 */
+	private boolean converged(){
+		return tolerance > 0 && residual < tolerance;
+	}
+
 
 	/**
-	 * Print the pagerank values. Before printing you should sort them according to decreasing order.
-	 * Print all the values to the output file. Print only the first 10 values to console.
+	 * Print the pagerank values of the top K URLs (-top, default 10) to the output file, highest first.
 	 *
 	 * @throws IOException if an error occurs
 	 */
 	public void printValues() throws IOException {
 
-		/** Sort the page rank values in descending order **/
-
-		Set<Entry<Integer,Double>> pagerankSet = rankValues.entrySet();
-		List<Entry<Integer,Double>> sortPagerankList = new ArrayList<Entry<Integer,Double>>(pagerankSet);
+		/** Pick the K highest ranks with a min-heap instead of sorting all of them **/
 
-		Collections.sort( sortPagerankList, new Comparator<Map.Entry<Integer,Double>>()
-		{
-			public int compare( Map.Entry<Integer,Double> obj1, Map.Entry<Integer,Double> obj2 )
-			{
-				return (obj2.getValue()).compareTo( obj1.getValue() );
+		TopK topRanks;
+		if(engine.equals("csr")){
+			topRanks = TopK.select(ranks, top);
+		}else{
+			topRanks = new TopK(top);
+			for(Entry<Integer,Double> rankEntry : rankValues.entrySet()){
+				topRanks.offer(rankEntry.getKey(), rankEntry.getValue());
 			}
-		} );
+		}
+		topRanks.sort();
 
 		/***
 		 * 
-		 *  Write top 10 ranked pages to the output file.
+		 *  Write top K ranked pages to the output file.
 		 * 
 		 **/
 		BufferedWriter out = null;
 		try{
 			out = new BufferedWriter(new FileWriter(new File(outputFile)));
-			out.append("Top 10 URLs with Highest Page Rank values. 	\n");
-			int i =0;
-			while (i < sortPagerankList.size() && i <10) {
-				Map.Entry<Integer,Double > rankEntry = sortPagerankList.get(i);
-				out.append(rankEntry.getKey()+" : "+rankEntry.getValue()+"	\n");
-				i++;
+			out.append("Top " + top + " URLs with Highest Page Rank values. 	\n");
+			for(int i = 0; i < topRanks.size(); i++){
+				out.append(topRanks.url(i)+" : "+topRanks.value(i)+"	\n");
 			}
+			out.append(convergenceSummary()+"	\n");
+			System.out.println(convergenceSummary());
 		}
 		catch(FileNotFoundException ex){
 			System.err.println("File Not Found!");
@@ -196,17 +399,69 @@ public class SequentialPageRank {
 		finally{
 			out.close();
 		}
+		if(saveFile != null){
+			saveRanks();
+		}
 	}
 
 
+	/**
+	 * With -relabel the ranks were computed on the renumbered graph: put them back in input URL order.
+	 */
+	private void storeRanks(){
+		if(ordering != null){
+			ranks = ordering.toOriginal(ranks);
+		}
+	}
+
+	/**
+	 * Set up uniform ranks and the arrays of the csr engine the way calculatePageRankCSR() does, so that
+	 * calculatorCSR() and calculatorPull() can be called on their own (see PageRankBenchmarks).
+	 *
+	 * @param inGraph - graph.transpose(), only needed by calculatorPull()
+	 */
+	void prepareCSR(CSRGraph graph, CSRGraph inGraph){
+		int totalNumberUniqueURLs = graph.numNodes;
+		this.graph = graph;
+		this.inGraph = inGraph;
+		invOutDegree = graph.inverseOutDegrees();
+		contributions = new double[totalNumberUniqueURLs];
+		ranks = new double[totalNumberUniqueURLs];
+		ranks_temp = new double[totalNumberUniqueURLs];
+		Arrays.fill(ranks, 1.0 / (double)totalNumberUniqueURLs);
+	}
+
+	/**
+	 * @return number of iterations run by calculatePageRank()
+	 */
+	int iterationsDone(){
+		return iterationsDone;
+	}
+
+	/**
+	 * @return L1 residual of the last iteration
+	 */
+	double residual(){
+		return residual;
+	}
+
+	/**
+	 * @return the number of iterations run and the L1 residual of the last one
+	 */
+	private String convergenceSummary(){
+		return "Iterations: " + iterationsDone + ", L1 residual: " + residual;
+	}
+
 	/**
 	 * @param rankValues - hash table to store the url page ranks
 	 * @param adjMatrix - adjacency list for a url and its outgoing  url links
 	 * @param df - damping factor
 	 * 
 	 * This functions has the core logic to calculate pageRanks for the given adjacency matrix.
+	 *
+	 * @return L1 norm of the change of the rank values
 	 */
-	public void calculator(HashMap<Integer,Double> rankValues,HashMap<Integer,ArrayList<Integer>> adjMatrix,double df)
+	public double calculator(HashMap<Integer,Double> rankValues,HashMap<Integer,ArrayList<Integer>> adjMatrix,double df)
 	{
 		ArrayList<Integer> outgoingURLs =new ArrayList<Integer>();
 		int currentURL=0;
@@ -258,7 +513,7 @@ public class SequentialPageRank {
 		danglingValue_eachPage = danglingValue / (double)totalNumberUniqueURLs;
 
 		for(int i=0;i<totalNumberUniqueURLs;i++){
-			rankValues.put(i, rankValues_temp.get(i) + danglingValue_eachPage);
+			rankValues_temp.put(i, rankValues_temp.get(i) + danglingValue_eachPage);
 		}
 
 		/**
@@ -276,19 +531,330 @@ public class SequentialPageRank {
 		 *  Include Damping factor in the final pageRank calculations and assign the new pageRanks to rankValues hash table
 		 */
 
+		double change = 0;
 		for(int i=0;i<totalNumberUniqueURLs;i++)
 		{
-			rankValues.put(i,((1-df)*((1.0)/(double)totalNumberUniqueURLs) + df*rankValues.get(i)));
+			double newRankValue = (1-df)*((1.0)/(double)totalNumberUniqueURLs) + df*rankValues_temp.get(i);
+			change += Math.abs(newRankValue - rankValues.get(i));
+			rankValues.put(i,newRankValue);
 		}
+		return change;
 	}
 	// end of calculator
+
+	/**
+	 * Same iterations as calculatePageRank() but on the CSR graph and primitive rank arrays.
+	 * The result stays in ranks for printValues() and saveRanks(); it is not copied into the boxed
+	 * rankValues, which would take more heap than the graph on large inputs.
+	 * With -checkpoint the ranks are checkpointed every checkpointEvery iterations, and -resume
+	 * starts from the checkpoint instead of uniform ranks.
+	 */
+	private void calculatePageRankCSR() throws IOException {
+		int totalNumberUniqueURLs = graph.numNodes;
+		ranks = new double[totalNumberUniqueURLs];
+		ranks_temp = new double[totalNumberUniqueURLs];
+
+		double initialPageRank = 1.0 / (double)totalNumberUniqueURLs;
+		Arrays.fill(ranks, initialPageRank);
+		if(resume){
+			RankCheckpoint checkpoint = RankCheckpoint.read(checkpointFile);
+			if(checkpoint.size != totalNumberUniqueURLs || checkpoint.urls != null){
+				throw new IOException(checkpointFile + " holds " + checkpoint.values.length + " of " + checkpoint.size
+						+ " ranks, the graph has " + totalNumberUniqueURLs + " URLs");
+			}
+			System.arraycopy(checkpoint.values, 0, ranks, 0, totalNumberUniqueURLs);
+			iterationsDone = checkpoint.iteration;
+			residual = checkpoint.residual;
+			System.out.println("Resuming after iteration " + iterationsDone + " from " + checkpointFile);
+		}
+		AsyncCheckpointWriter checkpointWriter = null;
+		if(checkpointFile != null){
+			checkpointWriter = new AsyncCheckpointWriter(checkpointFile, totalNumberUniqueURLs, null);
+		}
+
+		if(mode.equals("pull")){
+			contributions = new double[totalNumberUniqueURLs];
+		}
+		ParallelPullCalculator parallelCalculator = null;
+		if(threads > 1){
+			parallelCalculator = new ParallelPullCalculator(inGraph, invOutDegree, threads);
+		}
+		GaussSeidelSolver gaussSeidel = null;
+		if(mode.equals("gauss-seidel")){
+			gaussSeidel = new GaussSeidelSolver(graph, inGraph, order);
+		}
+
+		for(int count_of_loop = iterationsDone; count_of_loop < iterations && !converged(); count_of_loop++)
+		{
+			if(parallelCalculator != null){
+				residual = parallelCalculator.calculate(ranks, ranks_temp, df);
+				double[] swap = ranks;
+				ranks = ranks_temp;
+				ranks_temp = swap;
+			}else if(gaussSeidel != null){
+				residual = gaussSeidel.sweep(ranks, df);
+			}else if(mode.equals("pull")){
+				residual = calculatorPull(inGraph, df);
+			}else{
+				residual = calculatorCSR(graph, df);
+			}
+			iterationsDone++;
+			if(checkpointWriter != null && iterationsDone % checkpointEvery == 0){
+				checkpointWriter.checkpoint(iterationsDone, residual, ranks);
+			}
+		}
+		if(parallelCalculator != null){
+			parallelCalculator.shutdown();
+		}
+		if(checkpointWriter != null){
+			checkpointWriter.close();
+			System.out.println(checkpointWriter.summary());
+		}
+
+		storeRanks();
+	}
+
+	/**
+	 * @return rank of every URL after calculatePageRank(), indexed by URL
+	 */
+	double[] rankVector(){
+		if(engine.equals("csr")){
+			return ranks;
+		}
+		double[] values = new double[rankValues.size()];
+		for(int i = 0; i < values.length; i++){
+			values[i] = rankValues.get(i);
+		}
+		return values;
+	}
+
+	/**
+	 * Delta mode: rounds of DeltaPageRank until no URL has rank left to push, at most the iteration count.
+	 * Prints the number of URLs processed per round; the residual is the rank not propagated yet.
+	 */
+	private void calculatePageRankDelta() {
+		DeltaPageRank delta = new DeltaPageRank(graph, df, threshold);
+		while(iterationsDone < iterations && delta.activeCount() > 0 && !converged()){
+			int active = delta.round();
+			iterationsDone++;
+			residual = delta.remainingResidual();
+			System.out.println("Iteration " + iterationsDone + " : active URLs " + active + " of " + graph.numNodes);
+		}
+		ranks = delta.ranks();
+		storeRanks();
+	}
+
+	/**
+	 * Incremental mode: apply the link edits to the input graph and update the previous ranks with
+	 * DeltaPageRank, starting from the residual the edits leave behind (see GraphEdits.seed) instead of
+	 * from uniform ranks. The previous ranks must be converged ranks of the input graph.
+	 */
+	private void calculatePageRankIncremental() throws IOException {
+		double[] previousRanks = readRanks(previousFile, graph.numNodes);
+		GraphEdits edits = GraphEdits.read(editsFile);
+
+		long start = System.nanoTime();
+		CSRGraph newGraph = edits.apply(graph);
+		double[] startRanks = new double[newGraph.numNodes];
+		double[] residuals = new double[newGraph.numNodes];
+		edits.seed(graph, newGraph, previousRanks, df, startRanks, residuals);
+		graph = newGraph;
+
+		DeltaPageRank delta = new DeltaPageRank(graph, df, threshold, startRanks, residuals);
+		residual = delta.remainingResidual();
+		while(iterationsDone < iterations && delta.activeCount() > 0 && !converged()){
+			int active = delta.round();
+			iterationsDone++;
+			residual = delta.remainingResidual();
+			System.out.println("Iteration " + iterationsDone + " : active URLs " + active + " of " + graph.numNodes);
+		}
+		ranks = delta.ranks();
+		System.out.println("Update : " + edits.size() + " edits, " + graph.numNodes + " URLs, ms "
+				+ String.format(Locale.ROOT, "%.3f", (System.nanoTime() - start) / 1e6));
+	}
+
+	/**
+	 * @return true if file starts like a binary RankExporter file
+	 */
+	private static boolean isBinaryExport(String file) throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try{
+			return Integer.reverseBytes(in.readInt()) == RankExporter.MAGIC;
+		}catch(EOFException ex){
+			return false;
+		}finally{
+			in.close();
+		}
+	}
+
+	/**
+	 * Read the ranks written by -save, "url rank" lines or a binary export.
+	 *
+	 * @throws IOException if the file can not be read, is malformed or does not cover URLs 0..numNodes-1
+	 */
+	private static double[] readRanks(String file, int numNodes) throws IOException {
+		if(isBinaryExport(file)){
+			return RankExporter.readBinary(file, numNodes);
+		}
+		double[] values = new double[numNodes];
+		boolean[] seen = new boolean[numNodes];
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try{
+			String line;
+			while((line = in.readLine()) != null){
+				line = line.trim();
+				if(line.isEmpty()){
+					continue;
+				}
+				String[] fields = line.split("\\s+");
+				int url;
+				try{
+					url = Integer.parseInt(fields[0]);
+					if(url < 0 || url >= numNodes || fields.length != 2){
+						throw new IOException(file + ": bad line \"" + line + "\" for " + numNodes + " URLs");
+					}
+					values[url] = Double.parseDouble(fields[1]);
+				}catch(NumberFormatException ex){
+					throw new IOException(file + ": bad line \"" + line + "\"");
+				}
+				seen[url] = true;
+			}
+		}finally{
+			in.close();
+		}
+		for(int u = 0; u < numNodes; u++){
+			if(!seen[u]){
+				throw new IOException(file + ": no rank for URL " + u);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Write the rank of every URL with RankExporter in the -saveFormat format; both can be read by -previous.
+	 */
+	private void saveRanks() throws IOException {
+		long start = System.nanoTime();
+		double[] values = rankVector();
+		RankExporter.export(saveFile, saveFormat, values);
+		System.out.println("Saved " + values.length + " ranks to " + saveFile + " (" + saveFormat + ") in ms "
+				+ String.format(Locale.ROOT, "%.3f", (System.nanoTime() - start) / 1e6));
+	}
+
+	/**
+	 * @param graph - adjacency matrix in CSR form
+	 * @param df - damping factor
+	 *
+	 * Core logic of calculator() without boxing: reads ranks, accumulates into ranks_temp and swaps the two arrays.
+	 *
+	 * @return L1 norm of the change of the rank values
+	 */
+	public double calculatorCSR(CSRGraph graph, double df)
+	{
+		int[] offsets = graph.offsets;
+		int[] targets = graph.targets;
+		int totalNumberUniqueURLs = graph.numNodes;
+		double danglingValue = 0;
+
+		Arrays.fill(ranks_temp, 0.0);
+
+		for(int currentURL = 0; currentURL < totalNumberUniqueURLs; currentURL++)
+		{
+			int start = offsets[currentURL];
+			int end = offsets[currentURL+1];
+			int numberOfOutgoingURLs = end - start;
+
+			/**
+			 *  Handle dangling links (Node with no outbound links)
+			 **/
+			if(numberOfOutgoingURLs == 0){
+				danglingValue += ranks[currentURL];
+			}else{
+				double share = ranks[currentURL];
+				for(int i = start; i < end; i++){
+					ranks_temp[targets[i]] += share/numberOfOutgoingURLs;
+				}
+			}
+		}
+
+		double danglingValue_eachPage = danglingValue / (double)totalNumberUniqueURLs;
+		double teleport = (1-df)*((1.0)/(double)totalNumberUniqueURLs);
+
+		/**
+		 *  Distribute the dangling rank and include the damping factor, same order of operations as calculator()
+		 */
+		double change = 0;
+		for(int i=0;i<totalNumberUniqueURLs;i++)
+		{
+			ranks_temp[i] = teleport + df*(ranks_temp[i] + danglingValue_eachPage);
+			change += Math.abs(ranks_temp[i] - ranks[i]);
+		}
+
+		double[] swap = ranks;
+		ranks = ranks_temp;
+		ranks_temp = swap;
+		return change;
+	}
+
+	/**
+	 * @param inGraph - transposed adjacency matrix, the row of a URL lists the URLs linking to it
+	 * @param df - damping factor
+	 *
+	 * Pull formulation of calculatorCSR(): every URL gathers rank/outDegree from its in-links, so each
+	 * ranks_temp entry is written exactly once and there are no scattered writes.
+	 *
+	 * @return L1 norm of the change of the rank values
+	 */
+	public double calculatorPull(CSRGraph inGraph, double df)
+	{
+		int[] inOffsets = inGraph.offsets;
+		int[] sources = inGraph.targets;
+		int totalNumberUniqueURLs = inGraph.numNodes;
+		double danglingValue = 0;
+
+		for(int u = 0; u < totalNumberUniqueURLs; u++)
+		{
+			contributions[u] = ranks[u] * invOutDegree[u];
+			if(invOutDegree[u] == 0){
+				danglingValue += ranks[u];
+			}
+		}
+
+		double danglingValue_eachPage = danglingValue / (double)totalNumberUniqueURLs;
+		double teleport = (1-df)*((1.0)/(double)totalNumberUniqueURLs);
+
+		double change = 0;
+		for(int v = 0; v < totalNumberUniqueURLs; v++)
+		{
+			double sum = 0;
+			for(int i = inOffsets[v]; i < inOffsets[v+1]; i++){
+				sum += contributions[sources[i]];
+			}
+			ranks_temp[v] = teleport + df*(sum + danglingValue_eachPage);
+			change += Math.abs(ranks_temp[v] - ranks[v]);
+		}
+
+		double[] swap = ranks;
+		ranks = ranks_temp;
+		ranks_temp = swap;
+		return change;
+	}
+
 	public static void main(String[] args) throws IOException {
 
 		SequentialPageRank sequentialPR = new SequentialPageRank();
 		sequentialPR.parseArgs(args);
+		long start = System.nanoTime();
 		sequentialPR.loadInput();
+		long loaded = System.nanoTime();
 		sequentialPR.calculatePageRank();
+		long calculated = System.nanoTime();
 		sequentialPR.printValues();
+		// one line for scripts such as MPIPageRank.ScalingBenchmark, in Locale.ROOT so it parses the same everywhere
+		System.out.println("Timing : load ms " + String.format(Locale.ROOT, "%.3f", (loaded - start) / 1e6)
+				+ ", iterations " + sequentialPR.iterationsDone
+				+ ", ms/iteration " + String.format(Locale.ROOT, "%.3f", (calculated - loaded) / 1e6 / Math.max(1, sequentialPR.iterationsDone))
+				+ ", peak heap MB " + HeapUsage.peakMB());
 	}
 }
 
@@ -0,0 +1,72 @@
+package PageRank;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Compares the Jacobi iteration (-mode pull) with the Gauss-Seidel sweeps (-mode gauss-seidel, every
+ * -order) by running SequentialPageRank to the same tolerance.
+ *
+ * Usage : java PageRank.SolverBenchmark [input file name] [tolerance] [damping factor] [max iterations]
+ *
+ *   tolerance      - L1 norm of the rank change to stop at (default 1e-10)
+ *   damping factor - default 0.85
+ *   max iterations - default 1000
+ *
+ * Prints one CSV line per solver: iterations to the tolerance, ms (without loading the graph),
+ * ms per iteration, the last residual and the L1 distance of the ranks to the Jacobi ranks.
+ */
+public class SolverBenchmark {
+
+	private static final String[][] SOLVERS = {
+		{"-mode", "pull"},
+		{"-mode", "gauss-seidel", "-order", "natural"},
+		{"-mode", "gauss-seidel", "-order", "indegree"},
+		{"-mode", "gauss-seidel", "-order", "outdegree"},
+	};
+
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1){
+			System.out.println("Usage: java PageRank.SolverBenchmark [input file name] [tolerance] [damping factor] [max iterations]");
+			System.exit(-1);
+		}
+		String inputFile = args[0];
+		String tolerance = (args.length > 1) ? args[1] : "1e-10";
+		String df = (args.length > 2) ? args[2] : "0.85";
+		String maxIterations = (args.length > 3) ? args[3] : "1000";
+
+		System.out.println("solver,order,iterations,ms,ms/iteration,residual,L1 to jacobi");
+		double[] jacobiRanks = null;
+		for(String[] solver : SOLVERS){
+			String[] solverArgs = new String[6 + solver.length];
+			solverArgs[0] = inputFile;
+			// printValues() is not called, the output file is not written
+			solverArgs[1] = "";
+			solverArgs[2] = maxIterations;
+			solverArgs[3] = df;
+			solverArgs[4] = "-tolerance";
+			solverArgs[5] = tolerance;
+			System.arraycopy(solver, 0, solverArgs, 6, solver.length);
+
+			SequentialPageRank sequentialPR = new SequentialPageRank();
+			sequentialPR.parseArgs(solverArgs);
+			sequentialPR.loadInput();
+			long start = System.nanoTime();
+			sequentialPR.calculatePageRank();
+			double ms = (System.nanoTime() - start) / 1e6;
+
+			double[] ranks = sequentialPR.rankVector();
+			if(jacobiRanks == null){
+				jacobiRanks = ranks.clone();
+			}
+			double distance = 0;
+			for(int u = 0; u < ranks.length; u++){
+				distance += Math.abs(ranks[u] - jacobiRanks[u]);
+			}
+			int iterations = sequentialPR.iterationsDone();
+			String name = solver[1].equals("pull") ? "jacobi,-" : "gauss-seidel," + solver[3];
+			System.out.println(name + "," + iterations + "," + String.format(Locale.ROOT, "%.1f", ms) + ","
+					+ String.format(Locale.ROOT, "%.3f", ms / Math.max(1, iterations)) + "," + sequentialPR.residual() + "," + distance);
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package PageRank;
+
+/**
+ * The K URLs with the highest ranks, kept in a fixed-size min-heap of primitive arrays.
+ *
+ * offer() compares a rank with the smallest rank kept so far (the root) and only touches the heap
+ * if it is larger, so selecting from N ranks costs O(N log K) and allocates nothing after the
+ * constructor. Equal ranks are ordered by URL, lowest URL first, so the result does not depend on
+ * the order the ranks are offered in (MPIPageRank merges the per rank results in rank order).
+ */
+public class TopK {
+
+	private final int k;
+	// heap[0] is the URL with the lowest rank kept, i.e. the first one to drop out
+	private final int[] urls;
+	private final double[] values;
+	private int count = 0;
+	private boolean sorted = false;
+
+	/**
+	 * @param k - number of URLs to keep, at least 1
+	 */
+	public TopK(int k) {
+		if(k < 1){
+			throw new IllegalArgumentException("K must be at least 1");
+		}
+		this.k = k;
+		this.urls = new int[k];
+		this.values = new double[k];
+	}
+
+	/**
+	 * @return the K largest of values, indexed by URL
+	 */
+	public static TopK select(double[] values, int k) {
+		TopK topK = new TopK(k);
+		for(int url = 0; url < values.length; url++){
+			topK.offer(url, values[url]);
+		}
+		return topK;
+	}
+
+	/**
+	 * @return the K largest of values[url] over the given URLs
+	 */
+	public static TopK select(double[] values, int[] urls, int k) {
+		TopK topK = new TopK(k);
+		for(int i = 0; i < urls.length; i++){
+			topK.offer(urls[i], values[urls[i]]);
+		}
+		return topK;
+	}
+
+	public int k() {
+		return k;
+	}
+
+	/**
+	 * @return number of URLs kept, K once at least K were offered
+	 */
+	public int size() {
+		return count;
+	}
+
+	public void clear() {
+		count = 0;
+		sorted = false;
+	}
+
+	/**
+	 * Keep url if its rank is among the K highest offered so far.
+	 */
+	public void offer(int url, double value) {
+		if(sorted){
+			throw new IllegalStateException("offer() after sort(); call clear() first");
+		}
+		if(count < k){
+			urls[count] = url;
+			values[count] = value;
+			siftUp(count++);
+		}else if(before(url, value, urls[0], values[0])){
+			urls[0] = url;
+			values[0] = value;
+			siftDown(0, count);
+		}
+	}
+
+	/**
+	 * Put the kept URLs in order, highest rank first, for url(i) and value(i). This reuses the heap
+	 * arrays (heapsort), so no more URLs can be offered until clear().
+	 */
+	public void sort() {
+		if(sorted){
+			return;
+		}
+		// moving the root (the lowest rank) behind the shrinking heap leaves the arrays in descending order
+		for(int end = count - 1; end > 0; end--){
+			swap(0, end);
+			siftDown(0, end);
+		}
+		sorted = true;
+	}
+
+	/**
+	 * @return URL of the i-th highest rank, after sort()
+	 */
+	public int url(int i) {
+		return urls[i];
+	}
+
+	/**
+	 * @return i-th highest rank, after sort()
+	 */
+	public double value(int i) {
+		return values[i];
+	}
+
+	/**
+	 * Copy the kept URLs and ranks (heap or sorted order) into the first size() entries of the arrays.
+	 */
+	public void copyTo(int[] urlsOut, double[] valuesOut) {
+		System.arraycopy(urls, 0, urlsOut, 0, count);
+		System.arraycopy(values, 0, valuesOut, 0, count);
+	}
+
+	// true if (url1, value1) ranks higher than (url2, value2)
+	private static boolean before(int url1, double value1, int url2, double value2) {
+		return value1 > value2 || (value1 == value2 && url1 < url2);
+	}
+
+	private void siftUp(int i) {
+		while(i > 0){
+			int parent = (i - 1) / 2;
+			if(!before(urls[parent], values[parent], urls[i], values[i])){
+				break;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i, int end) {
+		while(true){
+			int child = 2 * i + 1;
+			if(child >= end){
+				break;
+			}
+			if(child + 1 < end && before(urls[child], values[child], urls[child+1], values[child+1])){
+				child++;
+			}
+			if(!before(urls[i], values[i], urls[child], values[child])){
+				break;
+			}
+			swap(i, child);
+			i = child;
+		}
+	}
+
+	private void swap(int i, int j) {
+		int url = urls[i];
+		urls[i] = urls[j];
+		urls[j] = url;
+		double value = values[i];
+		values[i] = values[j];
+		values[j] = value;
+	}
+}
@@ -0,0 +1,184 @@
+package PageRank;
+
+import java.util.Arrays;
+
+/**
+ * Renumbers the URLs of a graph so that linked URLs get nearby numbers. The rank arrays are indexed
+ * by URL, so following the links of a URL then reads ranks that are close together in memory, and a
+ * contiguous block of URLs (a rank's rows in MPIPageRank) keeps more of its links inside the block.
+ *
+ * ORDERS:
+ *   none     - keep the input numbering
+ *   indegree - most linked-to URLs first, so the hot part of the rank vector is small and dense
+ *   bfs      - breadth first over the links in both directions, starting from the most linked-to URL
+ *              not visited yet; URLs close in the graph end up close in number
+ *
+ * relabel() returns the renumbered graph; the ranks computed on it are mapped back to the input
+ * numbering with toOriginal() or originalId() before they are printed or saved.
+ */
+public class VertexOrdering {
+
+	public static final String[] ORDERS = {"none", "indegree", "bfs"};
+
+	// newIds[old URL] = new URL, oldIds[new URL] = old URL
+	private final int[] newIds;
+	private final int[] oldIds;
+
+	private VertexOrdering(int[] oldIds) {
+		this.oldIds = oldIds;
+		this.newIds = new int[oldIds.length];
+		for(int u = 0; u < oldIds.length; u++){
+			newIds[oldIds[u]] = u;
+		}
+	}
+
+	public static boolean isOrder(String order) {
+		return Arrays.asList(ORDERS).contains(order);
+	}
+
+	/**
+	 * @param graph - adjacency matrix in CSR form
+	 * @param order - one of ORDERS
+	 */
+	public static VertexOrdering compute(CSRGraph graph, String order) {
+		if(order.equals("none")){
+			int[] identity = new int[graph.numNodes];
+			for(int u = 0; u < graph.numNodes; u++){
+				identity[u] = u;
+			}
+			return new VertexOrdering(identity);
+		}
+		int[] byInDegree = inDegreeOrder(graph);
+		if(order.equals("indegree")){
+			return new VertexOrdering(byInDegree);
+		}
+		if(order.equals("bfs")){
+			return new VertexOrdering(bfsOrder(graph, byInDegree));
+		}
+		throw new IllegalArgumentException("Unknown order: " + order);
+	}
+
+	/**
+	 * @return URLs by decreasing in-degree, ties in URL order (counting sort, no boxing)
+	 */
+	private static int[] inDegreeOrder(CSRGraph graph) {
+		int totalNumberUniqueURLs = graph.numNodes;
+		int[] inDegree = new int[totalNumberUniqueURLs];
+		int maxDegree = 0;
+		for(int e = 0; e < graph.numEdges(); e++){
+			maxDegree = Math.max(maxDegree, ++inDegree[graph.targets[e]]);
+		}
+		// start[d] = position of the first URL with in-degree d, highest degree first
+		int[] start = new int[maxDegree + 2];
+		for(int u = 0; u < totalNumberUniqueURLs; u++){
+			start[maxDegree - inDegree[u] + 1]++;
+		}
+		for(int d = 1; d <= maxDegree + 1; d++){
+			start[d] += start[d-1];
+		}
+		int[] order = new int[totalNumberUniqueURLs];
+		for(int u = 0; u < totalNumberUniqueURLs; u++){
+			order[start[maxDegree - inDegree[u]]++] = u;
+		}
+		return order;
+	}
+
+	/**
+	 * @return URLs in breadth first order over out- and in-links, roots taken in the given order
+	 */
+	private static int[] bfsOrder(CSRGraph graph, int[] roots) {
+		int totalNumberUniqueURLs = graph.numNodes;
+		CSRGraph inGraph = graph.transpose();
+		boolean[] visited = new boolean[totalNumberUniqueURLs];
+		// the order doubles as the BFS queue
+		int[] order = new int[totalNumberUniqueURLs];
+		int tail = 0;
+		for(int k = 0; k < totalNumberUniqueURLs; k++){
+			int root = roots[k];
+			if(visited[root]){
+				continue;
+			}
+			visited[root] = true;
+			int head = tail;
+			order[tail++] = root;
+			while(head < tail){
+				int u = order[head++];
+				for(int e = graph.offsets[u]; e < graph.offsets[u+1]; e++){
+					int v = graph.targets[e];
+					if(!visited[v]){
+						visited[v] = true;
+						order[tail++] = v;
+					}
+				}
+				for(int e = inGraph.offsets[u]; e < inGraph.offsets[u+1]; e++){
+					int v = inGraph.targets[e];
+					if(!visited[v]){
+						visited[v] = true;
+						order[tail++] = v;
+					}
+				}
+			}
+		}
+		return order;
+	}
+
+	/**
+	 * @return graph with every URL u renumbered to newId(u); the links of every row are sorted
+	 */
+	public CSRGraph relabel(CSRGraph graph) {
+		int totalNumberUniqueURLs = graph.numNodes;
+		int[] offsets = new int[totalNumberUniqueURLs + 1];
+		for(int u = 0; u < totalNumberUniqueURLs; u++){
+			offsets[u+1] = offsets[u] + graph.outDegree(oldIds[u]);
+		}
+		int[] targets = new int[graph.numEdges()];
+		for(int u = 0; u < totalNumberUniqueURLs; u++){
+			int old = oldIds[u];
+			int e = offsets[u];
+			for(int i = graph.offsets[old]; i < graph.offsets[old+1]; i++){
+				targets[e++] = newIds[graph.targets[i]];
+			}
+			Arrays.sort(targets, offsets[u], offsets[u+1]);
+		}
+		return new CSRGraph(totalNumberUniqueURLs, offsets, targets);
+	}
+
+	public int newId(int url) {
+		return newIds[url];
+	}
+
+	public int originalId(int url) {
+		return oldIds[url];
+	}
+
+	/**
+	 * @return oldIds[new URL] = URL in the input numbering
+	 */
+	public int[] originalIds() {
+		return oldIds;
+	}
+
+	/**
+	 * @return ranks indexed by new URL, reordered to be indexed by the input URL
+	 */
+	public double[] toOriginal(double[] ranks) {
+		double[] original = new double[ranks.length];
+		for(int u = 0; u < ranks.length; u++){
+			original[oldIds[u]] = ranks[u];
+		}
+		return original;
+	}
+
+	/**
+	 * @return average distance |u - v| between the numbers of linked URLs, a rough measure of locality
+	 */
+	public static double averageLinkSpan(CSRGraph graph) {
+		long span = 0;
+		for(int u = 0; u < graph.numNodes; u++){
+			for(int e = graph.offsets[u]; e < graph.offsets[u+1]; e++){
+				span += Math.abs(graph.targets[e] - u);
+			}
+		}
+		return graph.numEdges() == 0 ? 0 : (double)span / graph.numEdges();
+	}
+}
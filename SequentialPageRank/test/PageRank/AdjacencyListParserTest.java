@@ -0,0 +1,180 @@
+package PageRank;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * AdjacencyListParser against String.split on the same text, and its checks on malformed input.
+ *
+ * Byte range ownership: a line belongs to the range its first byte is in, so ranges that cover the
+ * file end to end, cut anywhere, parse every line exactly once and in file order. MPIPageRank
+ * -load parallel relies on this to give every line to exactly one rank.
+ */
+public class AdjacencyListParserTest {
+
+	private static final String SAMPLE = "0 1 2\n1\n2 0  1\t3\r\n\n3 2\n  4 3 0 \n5 4";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void wholeFile() throws IOException {
+		File file = write(SAMPLE);
+		CSRGraph.Builder builder = new CSRGraph.Builder();
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try{
+			AdjacencyListParser.parse(in.getChannel(), 0, file.length(), builder);
+		}finally{
+			in.close();
+		}
+		assertEquals(expectedRows(SAMPLE), rows(builder));
+	}
+
+	@Test
+	public void everyTwoWayCut() throws IOException {
+		File file = write(SAMPLE);
+		List<String> expected = expectedRows(SAMPLE);
+		for(long cut = 0; cut <= file.length(); cut++){
+			List<String> rows = new ArrayList<String>();
+			rows.addAll(parseRange(file, 0, cut));
+			rows.addAll(parseRange(file, cut, file.length()));
+			assertEquals("cut at byte " + cut, expected, rows);
+		}
+	}
+
+	@Test
+	public void everyPartCount() throws IOException {
+		for(String text : new String[] {SAMPLE, SAMPLE + "\n", "7 1 2 3 4 5 6", "0\n1\n2\n3\n"}){
+			File file = write(text);
+			List<String> expected = expectedRows(text);
+			for(int parts = 1; parts <= file.length() + 2; parts++){
+				List<String> rows = new ArrayList<String>();
+				int lines = 0;
+				for(int part = 0; part < parts; part++){
+					CSRGraph.Builder builder = new CSRGraph.Builder();
+					lines += AdjacencyListParser.parsePart(file.getPath(), part, parts, builder);
+					rows.addAll(rows(builder));
+				}
+				assertEquals(parts + " parts of \"" + text + "\"", expected, rows);
+				assertEquals(expected.size(), lines);
+			}
+		}
+	}
+
+	@Test
+	public void linesAcrossReadBuffers() throws IOException {
+		// larger than the 4 MB read buffer, so lines and ranges also end inside a buffer refill
+		Random random = new Random(1);
+		StringBuilder text = new StringBuilder();
+		int url = 0;
+		while(text.length() < 9 << 20){
+			text.append(url++);
+			int degree = random.nextInt(40);
+			for(int i = 0; i < degree; i++){
+				text.append(' ').append(random.nextInt(1000000));
+			}
+			text.append('\n');
+		}
+		File file = write(text.toString());
+		List<String> expected = expectedRows(text.toString());
+		for(int parts : new int[] {1, 2, 3, 7}){
+			List<String> rows = new ArrayList<String>();
+			for(int part = 0; part < parts; part++){
+				CSRGraph.Builder builder = new CSRGraph.Builder();
+				AdjacencyListParser.parsePart(file.getPath(), part, parts, builder);
+				rows.addAll(rows(builder));
+			}
+			assertEquals(parts + " parts", expected, rows);
+		}
+	}
+
+	@Test
+	public void largestUrl() throws IOException {
+		CSRGraph.Builder builder = new CSRGraph.Builder();
+		AdjacencyListParser.parsePart(write("0 2147483647\n").getPath(), 0, 1, builder);
+		assertEquals("0:2147483647", rows(builder).get(0));
+	}
+
+	@Test
+	public void rejectsNumbersAboveIntRange() throws IOException {
+		// 9999999999 wraps to a positive int, 2147483648 to a negative one
+		for(String number : new String[] {"2147483648", "9999999999", "99999999999999999999"}){
+			try{
+				AdjacencyListParser.parsePart(write("0 1\n1 " + number + "\n").getPath(), 0, 1, new CSRGraph.Builder());
+				fail(number + " must be rejected");
+			}catch(IOException expected){
+			}
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsOtherCharacters() throws IOException {
+		AdjacencyListParser.parsePart(write("0 1\n1 -2\n").getPath(), 0, 1, new CSRGraph.Builder());
+	}
+
+	private List<String> parseRange(File file, long from, long to) throws IOException {
+		CSRGraph.Builder builder = new CSRGraph.Builder();
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try{
+			AdjacencyListParser.parse(in.getChannel(), from, to, builder);
+		}finally{
+			in.close();
+		}
+		return rows(builder);
+	}
+
+	private File write(String text) throws IOException {
+		File file = folder.newFile();
+		Files.write(file.toPath(), text.getBytes(StandardCharsets.US_ASCII));
+		return file;
+	}
+
+	/**
+	 * @return "url:target,target,..." for every row added to the builder, in order
+	 */
+	private static List<String> rows(CSRGraph.Builder builder) {
+		int[] urls = builder.rowIds();
+		CSRGraph graph = builder.buildRows();
+		List<String> rows = new ArrayList<String>();
+		for(int row = 0; row < urls.length; row++){
+			StringBuilder line = new StringBuilder().append(urls[row]).append(':');
+			for(int e = graph.offsets[row]; e < graph.offsets[row+1]; e++){
+				line.append(e > graph.offsets[row] ? "," : "").append(graph.targets[e]);
+			}
+			rows.add(line.toString());
+		}
+		return rows;
+	}
+
+	/**
+	 * @return the rows of text in the form of rows(), split with String methods
+	 */
+	private static List<String> expectedRows(String text) {
+		List<String> rows = new ArrayList<String>();
+		for(String line : text.split("\n")){
+			String[] fields = line.trim().split("\\s+");
+			if(fields[0].isEmpty()){
+				continue;
+			}
+			StringBuilder row = new StringBuilder().append(fields[0]).append(':');
+			for(int i = 1; i < fields.length; i++){
+				row.append(i > 1 ? "," : "").append(fields[i]);
+			}
+			rows.add(row.toString());
+		}
+		return rows;
+	}
+}
@@ -0,0 +1,102 @@
+package PageRank;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * GraphEdits on the 1000 URL sample: the edited graph, and -mode incremental against a full recompute on it.
+ *
+ * The edits add URLs above the largest old URL (1003 with a link, 1000..1002 without rows), turn URL 2
+ * into a dangling URL by removing both its links, and include an addition of an existing link and a
+ * removal of a missing one, which are ignored.
+ */
+public class GraphEditsTest {
+
+	private static final String INPUT = "pagerank.input.1000.urls.19";
+	private static final String EDITS = "- 2 4\n+ 5 1003\n+ 1003 0\n- 2 11\n+ 1 8\n- 1 2\n+ 1001 1003\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void applyEditsTheRows() throws IOException {
+		CSRGraph graph = AdjacencyListParser.parse(INPUT);
+		CSRGraph edited = GraphEdits.read(write(EDITS).getPath()).apply(graph);
+
+		assertEquals(1004, edited.numNodes);
+		assertArrayEquals(new int[0], row(edited, 2));
+		assertArrayEquals(new int[] {20, 43, 1003}, row(edited, 5));
+		assertArrayEquals(new int[] {8, 19}, row(edited, 1));
+		assertArrayEquals(new int[] {1003}, row(edited, 1001));
+		assertArrayEquals(new int[] {0}, row(edited, 1003));
+		assertArrayEquals(new int[0], row(edited, 1000));
+		assertArrayEquals(new int[0], row(edited, 1002));
+		// rows without edits are copied
+		for(int u = 6; u < graph.numNodes; u++){
+			assertArrayEquals("URL " + u, row(graph, u), row(edited, u));
+		}
+		assertEquals(graph.numEdges() - 2 + 1 + 1 + 1, edited.numEdges());
+	}
+
+	@Test
+	public void incrementalMatchesFullRecompute() throws IOException {
+		// converged ranks of the old graph, saved for -previous
+		File previous = folder.newFile();
+		SequentialPageRankTest.run(INPUT, folder.newFile(), 300, "-mode", "pull", "-save", previous.getPath());
+		File edits = write(EDITS);
+
+		CSRGraph edited = GraphEdits.read(edits.getPath()).apply(AdjacencyListParser.parse(INPUT));
+		File editedInput = folder.newFile();
+		writeGraph(edited, editedInput);
+		double[] full = SequentialPageRankTest.run(editedInput.getPath(), folder.newFile(), 300, "-mode", "pull");
+
+		for(double threshold : new double[] {1e-8, 1e-12}){
+			double[] incremental = SequentialPageRankTest.run(INPUT, folder.newFile(), 1000, "-mode", "incremental",
+					"-previous", previous.getPath(), "-edits", edits.getPath(), "-threshold", String.valueOf(threshold));
+			assertEquals(full.length, incremental.length);
+			// the bound of delta mode (see SequentialPageRankTest.deltaModeMatchesPullMode)
+			double bound = 2 * full.length * threshold / (1 - 0.85);
+			double error = 0;
+			for(int url = 0; url < full.length; url++){
+				error += Math.abs(incremental[url] - full[url]);
+			}
+			assertTrue("threshold " + threshold + ": L1 error " + error + " above " + bound, error <= bound);
+		}
+	}
+
+	private File write(String text) throws IOException {
+		File file = folder.newFile();
+		Files.write(file.toPath(), text.getBytes(StandardCharsets.US_ASCII));
+		return file;
+	}
+
+	private static int[] row(CSRGraph graph, int url) {
+		return Arrays.copyOfRange(graph.targets, graph.offsets[url], graph.offsets[url+1]);
+	}
+
+	/**
+	 * Write the graph in the adjacency list input format.
+	 */
+	private static void writeGraph(CSRGraph graph, File file) throws IOException {
+		StringBuilder text = new StringBuilder();
+		for(int u = 0; u < graph.numNodes; u++){
+			text.append(u);
+			for(int e = graph.offsets[u]; e < graph.offsets[u+1]; e++){
+				text.append(' ').append(graph.targets[e]);
+			}
+			text.append('\n');
+		}
+		Files.write(file.toPath(), text.toString().getBytes(StandardCharsets.US_ASCII));
+	}
+}
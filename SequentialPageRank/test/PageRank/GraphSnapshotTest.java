@@ -0,0 +1,130 @@
+package PageRank;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * GraphSnapshot write -> load round trips. A plain snapshot gives back the same arrays; a varint
+ * snapshot stores every out-link list sorted, so it gives back the same offsets and every row sorted.
+ * readPart() of either encoding gives back the rows of its URL range.
+ */
+public class GraphSnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void unsortedRows() throws IOException {
+		// row 1 is unsorted with a repeated link, row 2 dangling, row 3 has gaps of 1 to 3 varint bytes
+		int numNodes = 70000;
+		int[] offsets = new int[numNodes + 1];
+		int[] targets = {1, 2, 69999, 3, 3, 0, 0, 200, 16384, 69999};
+		int[] rowEnds = {3, 6, 6, 10};
+		for(int u = 0; u < numNodes; u++){
+			offsets[u + 1] = (u < rowEnds.length) ? rowEnds[u] : targets.length;
+		}
+		checkRoundTrip(new CSRGraph(numNodes, offsets, targets));
+	}
+
+	@Test
+	public void randomGraph() throws IOException {
+		Random random = new Random(1);
+		int numNodes = 5000;
+		int[] offsets = new int[numNodes + 1];
+		int[] targets = new int[numNodes * 20];
+		int e = 0;
+		for(int u = 0; u < numNodes; u++){
+			int degree = random.nextInt(40);
+			for(int i = 0; i < degree && e < targets.length; i++){
+				targets[e++] = random.nextInt(numNodes);
+			}
+			offsets[u + 1] = e;
+		}
+		checkRoundTrip(new CSRGraph(numNodes, offsets, Arrays.copyOf(targets, e)));
+	}
+
+	@Test
+	public void partsCoverEveryRowOnce() throws IOException {
+		// what MPIPageRank -load parallel does: every rank reads its own range of URLs
+		Random random = new Random(2);
+		int numNodes = 1000;
+		int[] offsets = new int[numNodes + 1];
+		int[] targets = new int[numNodes * 30];
+		int e = 0;
+		for(int u = 0; u < numNodes; u++){
+			int degree = (u % 7 == 0) ? 0 : random.nextInt(30);
+			for(int i = 0; i < degree; i++){
+				targets[e++] = random.nextInt(numNodes);
+			}
+			offsets[u + 1] = e;
+		}
+		CSRGraph graph = new CSRGraph(numNodes, offsets, Arrays.copyOf(targets, e));
+		for(int encoding : new int[] {GraphSnapshot.PLAIN, GraphSnapshot.VARINT}){
+			File snapshot = folder.newFile();
+			GraphSnapshot.write(graph, snapshot.getPath(), encoding);
+			CSRGraph whole = GraphSnapshot.read(snapshot.getPath());
+			for(int parts : new int[] {1, 2, 3, 7, 1000, 1001}){
+				int url = 0;
+				for(int part = 0; part < parts; part++){
+					CSRGraph.Builder builder = new CSRGraph.Builder();
+					int rows = GraphSnapshot.readPart(snapshot.getPath(), part, parts, builder);
+					int[] urls = builder.rowIds();
+					CSRGraph slice = builder.buildRows();
+					assertEquals(urls.length, rows);
+					for(int r = 0; r < rows; r++, url++){
+						assertEquals(url, urls[r]);
+						assertArrayEquals(encoding + " encoding, " + parts + " parts, URL " + url,
+								Arrays.copyOfRange(whole.targets, whole.offsets[url], whole.offsets[url + 1]),
+								Arrays.copyOfRange(slice.targets, slice.offsets[r], slice.offsets[r + 1]));
+					}
+				}
+				assertEquals(numNodes, url);
+			}
+		}
+	}
+
+	@Test
+	public void textInputIsParsed() throws IOException {
+		File text = folder.newFile();
+		Files.write(text.toPath(), "0 2 1\n1\n2 0\n".getBytes(StandardCharsets.US_ASCII));
+		assertFalse(GraphSnapshot.isSnapshot(text.getPath()));
+		CSRGraph graph = GraphSnapshot.load(text.getPath());
+		assertArrayEquals(new int[] {0, 2, 2, 3}, graph.offsets);
+		assertArrayEquals(new int[] {2, 1, 0}, graph.targets);
+	}
+
+	private void checkRoundTrip(CSRGraph graph) throws IOException {
+		File plain = folder.newFile();
+		GraphSnapshot.write(graph, plain.getPath(), GraphSnapshot.PLAIN);
+		assertTrue(GraphSnapshot.isSnapshot(plain.getPath()));
+		CSRGraph read = GraphSnapshot.load(plain.getPath());
+		assertEquals(graph.numNodes, read.numNodes);
+		assertArrayEquals(graph.offsets, read.offsets);
+		assertArrayEquals(graph.targets, read.targets);
+
+		File varint = folder.newFile();
+		GraphSnapshot.write(graph, varint.getPath(), GraphSnapshot.VARINT);
+		read = GraphSnapshot.load(varint.getPath());
+		assertEquals(graph.numNodes, read.numNodes);
+		assertArrayEquals(graph.offsets, read.offsets);
+		int[] sorted = graph.targets.clone();
+		for(int u = 0; u < graph.numNodes; u++){
+			Arrays.sort(sorted, graph.offsets[u], graph.offsets[u + 1]);
+		}
+		assertArrayEquals(sorted, read.targets);
+		assertTrue("varint is smaller", varint.length() < plain.length());
+	}
+}
@@ -0,0 +1,111 @@
+package PageRank;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * RankCheckpoint write then read: a full vector and a slice with its URLs, sections larger than the
+ * 1 MB buffer, and the temporary file that is renamed over the previous checkpoint.
+ */
+public class RankCheckpointTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void fullVector() throws IOException {
+		String file = new File(folder.getRoot(), "ranks.checkpoint").getPath();
+		double[] values = randomValues(10, 1);
+		// only the first count entries are written
+		RankCheckpoint.write(file, 7, 10, 0.125, null, values, 8);
+
+		RankCheckpoint checkpoint = RankCheckpoint.read(file);
+		assertEquals(7, checkpoint.iteration);
+		assertEquals(10, checkpoint.size);
+		assertEquals(0.125, checkpoint.residual, 0.0);
+		assertNull(checkpoint.urls);
+		assertArrayEquals(Arrays.copyOf(values, 8), checkpoint.values, 0.0);
+		assertFalse(new File(file + ".tmp").exists());
+	}
+
+	@Test
+	public void sliceAcrossBuffers() throws IOException {
+		String file = new File(folder.getRoot(), "rank3.checkpoint").getPath();
+		// 300k doubles are 2.4 MB, the URL section 1.2 MB
+		int count = 300000;
+		int[] urls = new int[count];
+		for(int i = 0; i < count; i++){
+			urls[i] = 3 + 4 * i;
+		}
+		double[] values = randomValues(count, 2);
+		RankCheckpoint.write(file, 42, 4 * count, Double.NaN, urls, values, count);
+
+		RankCheckpoint checkpoint = RankCheckpoint.read(file);
+		assertEquals(42, checkpoint.iteration);
+		assertEquals(4 * count, checkpoint.size);
+		assertEquals(Double.NaN, checkpoint.residual, 0.0);
+		assertArrayEquals(urls, checkpoint.urls);
+		assertArrayEquals(values, checkpoint.values, 0.0);
+	}
+
+	@Test
+	public void replacesPreviousCheckpoint() throws IOException {
+		String file = new File(folder.getRoot(), "ranks.checkpoint").getPath();
+		RankCheckpoint.write(file, 1, 1000, 1.0, null, randomValues(1000, 3), 1000);
+		// a temporary file left behind by a crash during the next write is overwritten, not appended to
+		Files.write(new File(file + ".tmp").toPath(), "left over".getBytes(StandardCharsets.US_ASCII));
+		double[] values = randomValues(5, 4);
+		RankCheckpoint.write(file, 2, 5, 0.5, null, values, 5);
+
+		RankCheckpoint checkpoint = RankCheckpoint.read(file);
+		assertEquals(2, checkpoint.iteration);
+		assertArrayEquals(values, checkpoint.values, 0.0);
+		assertFalse(new File(file + ".tmp").exists());
+	}
+
+	@Test
+	public void rejectsTruncatedFiles() throws IOException {
+		String file = new File(folder.getRoot(), "ranks.checkpoint").getPath();
+		RankCheckpoint.write(file, 1, 100, 1.0, null, randomValues(100, 5), 100);
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try{
+			out.setLength(out.length() - 8);
+		}finally{
+			out.close();
+		}
+		try{
+			RankCheckpoint.read(file);
+			fail("truncated checkpoint must be rejected");
+		}catch(IOException expected){
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsOtherFiles() throws IOException {
+		RankCheckpoint.read("pagerank.input");
+	}
+
+	private static double[] randomValues(int count, long seed) {
+		Random random = new Random(seed);
+		double[] values = new double[count];
+		for(int i = 0; i < count; i++){
+			values[i] = random.nextDouble() / count;
+		}
+		return values;
+	}
+}
@@ -0,0 +1,135 @@
+package PageRank;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Round trip of the text format of RankExporter, whose 17 digit formatter (putDigits) replaces
+ * Double.toString for ranks from 1e-11 to 10.
+ *
+ * Every printed rank must parse back to the same double and, inside that range, be the value
+ * correctly rounded (half to even) to 17 significant digits, which BigDecimal computes exactly.
+ */
+public class RankExporterTest {
+
+	private static final MathContext DIGITS_17 = new MathContext(17, RoundingMode.HALF_EVEN);
+	// putDigits covers 10^-11 <= |rank| < 10; the double 1e-11 is a little below 10^-11 and is
+	// printed by the Double.toString fallback
+	private static final BigDecimal MIN_DIGITS = new BigDecimal("1E-11");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void rangeEdges() throws IOException {
+		checkRoundTrip(new double[] {
+				1e-11, Math.nextUp(1e-11), Math.nextDown(1e-11),
+				10, Math.nextDown(10.0), Math.nextUp(10.0),
+				Double.MIN_VALUE, Double.MAX_VALUE, 0.0, -0.0, 0.5, 0.25, 1.0 / 3});
+	}
+
+	/**
+	 * Powers of ten and their neighbours. The doubles 1e-7 and 1e-6 are a little below the decimal
+	 * power, so Math.log10 rounds up to the next decade and putDigits has to correct the exponent;
+	 * the values right below every power have 17 digits of nines. (A carry into the next decade would
+	 * need a double within 5e-18 relative below a power of ten; there is none from 1e-11 to 10, the
+	 * closest is the double 1e-11 at 6e-17 below, which this covers.)
+	 */
+	@Test
+	public void powersOfTen() throws IOException {
+		double[] values = new double[13 * 9];
+		int n = 0;
+		for(int e = -11; e <= 1; e++){
+			double power = Double.parseDouble("1e" + e);
+			double below = power;
+			double above = power;
+			values[n++] = power;
+			for(int i = 0; i < 4; i++){
+				below = Math.nextDown(below);
+				above = Math.nextUp(above);
+				values[n++] = below;
+				values[n++] = above;
+			}
+		}
+		checkRoundTrip(values);
+	}
+
+	@Test
+	public void negativeRanks() throws IOException {
+		checkRoundTrip(new double[] {-1e-11, -Math.nextDown(1.0), -0.125, -9.5, -1e-12});
+	}
+
+	@Test
+	public void randomValuesInEveryDecade() throws IOException {
+		Random random = new Random(1);
+		double[] values = new double[12 * 20000];
+		for(int i = 0; i < values.length; i++){
+			int decade = -11 + i % 12;
+			values[i] = (1 + 9 * random.nextDouble()) * Math.pow(10, decade);
+		}
+		checkRoundTrip(values);
+	}
+
+	@Test
+	public void randomBits() throws IOException {
+		// uniform over the bit patterns of [1e-11, 10), so every binary exponent is covered
+		Random random = new Random(2);
+		long low = Double.doubleToLongBits(1e-11);
+		long high = Double.doubleToLongBits(10.0);
+		double[] values = new double[200000];
+		for(int i = 0; i < values.length; i++){
+			values[i] = Double.longBitsToDouble(low + (long)(random.nextDouble() * (high - low)));
+		}
+		checkRoundTrip(values);
+	}
+
+	@Test
+	public void binaryRoundTrip() throws IOException {
+		double[] values = {1e-11, Math.nextDown(10.0), 0.0, -1.5, Double.MIN_VALUE};
+		File file = folder.newFile();
+		RankExporter.export(file.getPath(), "binary", values);
+		double[] read = RankExporter.readBinary(file.getPath(), values.length);
+		for(int i = 0; i < values.length; i++){
+			assertEquals(Double.doubleToLongBits(values[i]), Double.doubleToLongBits(read[i]));
+		}
+	}
+
+	private void checkRoundTrip(double[] values) throws IOException {
+		File file = folder.newFile();
+		RankExporter.export(file.getPath(), "text", values);
+		List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.US_ASCII);
+		assertEquals(values.length, lines.size());
+		for(int url = 0; url < values.length; url++){
+			String line = lines.get(url);
+			assertEquals("record length of \"" + line + "\"", 10 + 1 + 23, line.length());
+			String[] fields = line.trim().split("\\s+");
+			assertEquals(url, Integer.parseInt(fields[0]));
+			String printed = fields[1];
+			double value = values[url];
+			assertEquals(printed + " for " + value, Double.doubleToLongBits(value),
+					Double.doubleToLongBits(Double.parseDouble(printed)));
+
+			BigDecimal exact = new BigDecimal(value).abs();
+			if(exact.compareTo(MIN_DIGITS) >= 0 && exact.compareTo(BigDecimal.TEN) < 0){
+				assertTrue(printed + " for " + value, printed.matches("-?[1-9]\\.[0-9]{16}E-?[0-9]+"));
+				BigDecimal expected = new BigDecimal(value).round(DIGITS_17);
+				assertEquals(printed + " for " + value + ", expected " + expected, 0,
+						new BigDecimal(printed).compareTo(expected));
+			}
+		}
+	}
+}
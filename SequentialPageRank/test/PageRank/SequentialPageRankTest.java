@@ -0,0 +1,88 @@
+package PageRank;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * SequentialPageRank end to end on the sample inputs: the csr engine does the same operations in the
+ * same order as the hashmap reference implementation, so both give the same ranks and the same top 10.
+ * Delta mode stops with rank left unpropagated and is compared to a converged pull run instead.
+ */
+public class SequentialPageRankTest {
+
+	private static final String[] SAMPLES = {"pagerank.input", "pagerank.input.1000.urls.19"};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void csrEngineMatchesHashmapEngine() throws IOException {
+		for(String input : SAMPLES){
+			File csrOutput = folder.newFile();
+			File hashmapOutput = folder.newFile();
+			double[] csr = run(input, csrOutput, 100, "-engine", "csr");
+			double[] hashmap = run(input, hashmapOutput, 100, "-engine", "hashmap");
+			assertEquals(input, hashmap.length, csr.length);
+			for(int url = 0; url < csr.length; url++){
+				assertEquals(input + " URL " + url, hashmap[url], csr[url], 0.0);
+			}
+			// header and top 10 lines
+			assertEquals(input, topLines(hashmapOutput), topLines(csrOutput));
+		}
+	}
+
+	@Test
+	public void deltaModeMatchesPullMode() throws IOException {
+		for(String input : SAMPLES){
+			// 300 pull iterations leave an error of 0.85^300, far below the thresholds
+			double[] pull = run(input, folder.newFile(), 300, "-mode", "pull");
+			for(double threshold : new double[] {1e-6, 1e-10}){
+				double[] delta = run(input, folder.newFile(), 1000, "-mode", "delta", "-threshold", String.valueOf(threshold));
+				assertEquals(input, pull.length, delta.length);
+				// every URL ends with a residual of at most threshold, and a residual r changes the ranks by at
+				// most r/(1-df) in total before the scaling to sum 1, which at most doubles the error
+				double bound = 2 * pull.length * threshold / (1 - 0.85);
+				double error = 0;
+				for(int url = 0; url < pull.length; url++){
+					error += Math.abs(delta[url] - pull[url]);
+				}
+				assertTrue(input + " threshold " + threshold + ": L1 error " + error + " above " + bound, error <= bound);
+			}
+		}
+	}
+
+	/**
+	 * Run with damping factor 0.85 and the given options.
+	 *
+	 * @return the rank of every URL
+	 */
+	static double[] run(String input, File output, int iterations, String... options) throws IOException {
+		String[] args = new String[4 + options.length];
+		args[0] = input;
+		args[1] = output.getPath();
+		args[2] = String.valueOf(iterations);
+		args[3] = "0.85";
+		System.arraycopy(options, 0, args, 4, options.length);
+		SequentialPageRank sequentialPR = new SequentialPageRank();
+		sequentialPR.parseArgs(args);
+		sequentialPR.loadInput();
+		sequentialPR.calculatePageRank();
+		sequentialPR.printValues();
+		return sequentialPR.rankVector();
+	}
+
+	private static List<String> topLines(File output) throws IOException {
+		List<String> lines = Files.readAllLines(output.toPath(), StandardCharsets.US_ASCII);
+		return lines.subList(0, Math.min(11, lines.size()));
+	}
+}
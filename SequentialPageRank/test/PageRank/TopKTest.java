@@ -0,0 +1,161 @@
+package PageRank;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * TopK against a full sort, in particular the tie order: equal ranks come lowest URL first, whatever
+ * order the URLs are offered in, so MPIPageRank's merge of per rank results matches the sequential one.
+ */
+public class TopKTest {
+
+	@Test
+	public void tiesAreOrderedByUrl() {
+		double[] values = {0.5, 0.25, 0.5, 0.5, 0.125, 0.25, 0.5};
+		TopK topK = TopK.select(values, 5);
+		topK.sort();
+		assertTop(new int[] {0, 2, 3, 6, 1}, topK);
+	}
+
+	@Test
+	public void tieAtTheCutIsDecidedByUrl() {
+		// 7 URLs share the K-th rank: the lowest of them make the cut
+		double[] values = new double[20];
+		Arrays.fill(values, 1.0);
+		values[13] = 2.0;
+		values[4] = 3.0;
+		TopK topK = TopK.select(values, 5);
+		topK.sort();
+		assertTop(new int[] {4, 13, 0, 1, 2}, topK);
+	}
+
+	@Test
+	public void offerOrderDoesNotMatter() {
+		Random random = new Random(1);
+		double[] values = new double[2000];
+		for(int url = 0; url < values.length; url++){
+			// few distinct values, so most of the top K are ties
+			values[url] = random.nextInt(10) / 8.0;
+		}
+		int[] expected = sortedUrls(values);
+		int[] order = new int[values.length];
+		for(int url = 0; url < order.length; url++){
+			order[url] = url;
+		}
+		for(int k : new int[] {1, 7, 64, 2000, 5000}){
+			for(int round = 0; round < 20; round++){
+				shuffle(order, random);
+				TopK topK = new TopK(k);
+				for(int url : order){
+					topK.offer(url, values[url]);
+				}
+				topK.sort();
+				assertTop(Arrays.copyOf(expected, Math.min(k, values.length)), topK);
+			}
+		}
+	}
+
+	@Test
+	public void mergeOfPartsMatchesWholeSelection() {
+		// what MPIPageRank does: every rank selects from its URLs, rank 0 merges the candidates
+		Random random = new Random(2);
+		double[] values = new double[1000];
+		for(int url = 0; url < values.length; url++){
+			values[url] = random.nextInt(5);
+		}
+		int k = 10;
+		TopK whole = TopK.select(values, k);
+		whole.sort();
+
+		TopK merged = new TopK(k);
+		int parts = 3;
+		int[] urls = new int[k];
+		double[] ranks = new double[k];
+		for(int part = 0; part < parts; part++){
+			int[] owned = new int[values.length / parts + 1];
+			int n = 0;
+			for(int url = values.length - 1 - part; url >= 0; url -= parts){
+				owned[n++] = url;
+			}
+			TopK local = TopK.select(values, Arrays.copyOf(owned, n), k);
+			local.copyTo(urls, ranks);
+			for(int i = 0; i < local.size(); i++){
+				merged.offer(urls[i], ranks[i]);
+			}
+		}
+		merged.sort();
+		int[] expected = new int[k];
+		for(int i = 0; i < k; i++){
+			expected[i] = whole.url(i);
+		}
+		assertTop(expected, merged);
+	}
+
+	@Test
+	public void clearAllowsReuse() {
+		TopK topK = new TopK(2);
+		topK.offer(1, 1.0);
+		topK.offer(2, 2.0);
+		topK.sort();
+		try{
+			topK.offer(3, 3.0);
+			fail("offer() after sort() must throw");
+		}catch(IllegalStateException expected){
+		}
+		topK.clear();
+		assertEquals(0, topK.size());
+		topK.offer(5, 0.5);
+		topK.sort();
+		assertTop(new int[] {5}, topK);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void kMustBePositive() {
+		new TopK(0);
+	}
+
+	private static void assertTop(int[] expectedUrls, TopK topK) {
+		assertEquals(expectedUrls.length, topK.size());
+		for(int i = 0; i < expectedUrls.length; i++){
+			assertEquals("position " + i, expectedUrls[i], topK.url(i));
+		}
+	}
+
+	/**
+	 * @return all URLs by rank, highest first, equal ranks lowest URL first
+	 */
+	private static int[] sortedUrls(final double[] values) {
+		Integer[] urls = new Integer[values.length];
+		for(int url = 0; url < urls.length; url++){
+			urls[url] = url;
+		}
+		Arrays.sort(urls, new Comparator<Integer>()
+		{
+			public int compare(Integer a, Integer b)
+			{
+				int byValue = Double.compare(values[b], values[a]);
+				return byValue != 0 ? byValue : a.compareTo(b);
+			}
+		});
+		int[] sorted = new int[urls.length];
+		for(int i = 0; i < urls.length; i++){
+			sorted[i] = urls[i];
+		}
+		return sorted;
+	}
+
+	private static void shuffle(int[] values, Random random) {
+		for(int i = values.length - 1; i > 0; i--){
+			int j = random.nextInt(i + 1);
+			int swap = values[i];
+			values[i] = values[j];
+			values[j] = swap;
+		}
+	}
+}